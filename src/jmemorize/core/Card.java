@@ -22,6 +22,8 @@ public class Card implements Events, Cloneable {
     private int mTestsHit;
     private int mFrontHitsCorrect;
     private int mBackHitsCorrect;
+    private ReviewLog mReviewLog; // created on first review
+    private int mId = -1; // dense id within the category tree, -1 if never added
 
     public Card(String front, String back) {
         this(FormattedText.formatted(front), FormattedText.formatted(back));
@@ -82,6 +84,47 @@ public class Card implements Events, Cloneable {
         }
     }
 
+    /**
+     * @return the id of this card, which is unique within the category tree
+     * that the card belongs to and stays the same as long as the card stays
+     * in that tree. Ids are handed out densely from 0, so they can be used as
+     * array indexes. Returns -1 if the card was never added to a category.
+     *
+     * @see Category#getCardIdCount()
+     */
+    public int getId() {
+        return mId;
+    }
+
+    protected void setId(int id) {
+        mId = id;
+    }
+
+    /**
+     * @return the reviews of this card or <code>null</code> if the card was
+     * never reviewed since the review log was introduced.
+     */
+    public ReviewLog getReviewLog() {
+        return mReviewLog;
+    }
+
+    public void setReviewLog(ReviewLog log) {
+        mReviewLog = log;
+    }
+
+    /**
+     * Appends a review to the review log of this card.
+     *
+     * @see ReviewLog#add(long, boolean, boolean, int, int, int)
+     */
+    public void addReview(long time, boolean passed, boolean flipped,
+            int responseTime, int levelBefore, int levelAfter) {
+        if (mReviewLog == null) {
+            mReviewLog = new ReviewLog();
+        }
+        mReviewLog.add(time, passed, flipped, responseTime, levelBefore, levelAfter);
+    }
+
     // Other methods...
 
     private void attachCardSideObservers() {
@@ -108,7 +151,7 @@ public class Card implements Events, Cloneable {
     }
 
     public void setDateModified(Date date) {
-        if (date.before(mDateCreated) || date.equals(mDateCreated))
+        if (date.before(mDateCreated))
             throw new IllegalArgumentException(
                     "Modification date must be after or equal to the creation date.");
 
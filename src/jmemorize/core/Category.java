@@ -18,13 +18,21 @@
  */
 package jmemorize.core;
 
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import jmemorize.util.NaturalOrderComparator;
 
@@ -55,10 +63,20 @@ public class Category implements Events
     private int                    m_depth           = 0;                     // is 0 for root category
 
     private List<List<Card>>       m_decks           = new ArrayList<List<Card>>(); // list of card lists
+    private int[]                  m_cardCounts      = new int[0];            // per level, including child categories
+    
+    // local cards of level > 0 indexed by their expiration time
+    private SortedMap<Long, List<Card>> m_expirations = new TreeMap<Long, List<Card>>();
 
     private Category               m_parent;
     private List<Category>         m_childCategories = new LinkedList<Category>();
     
+    // the cards of the category tree by their id and the ids of removed
+    // cards, which are handed out again. only kept by the root category and
+    // created on demand
+    private List<Card>             m_cardsById;
+    private BitSet                 m_freeCardIds;
+    
     /**
      * Creates a new Category.
      * 
@@ -104,6 +122,7 @@ public class Category implements Events
         int level = card.getLevel();
         Category category = card.getCategory();
         removeCardInternal(card);
+        unregisterCard(card);
         
         fireCardEvent(REMOVED_EVENT, card, category, level);
     }
@@ -170,6 +189,7 @@ public class Category implements Events
     public void resetCard(Card card) //HACK
     {
         card.resetStats();
+        card.setReviewLog(null);
         changeCardLevel(card, 0, null, null);
     }
     
@@ -226,44 +246,132 @@ public class Category implements Events
         return cardList;
     }
     
+    /**
+     * @return a read-only view on all cards of all decks in this category and
+     * its child categories.
+     * 
+     * @see #getCardView(int)
+     */
+    public Collection<Card> getCardView()
+    {
+        return getCardView(-1);
+    }
+    
+    /**
+     * Returns a read-only view on the cards of given deck level in this
+     * category and its child categories. Unlike {@link #getCards(int)} no card
+     * lists are copied. The cards are visited lazily when iterating the view
+     * in the same order as returned by {@link #getCards(int)} and the size of
+     * the view is taken from the card counters. The view reflects later
+     * changes to the categories, but must not be iterated while cards are
+     * added or removed.
+     * 
+     * @param level the deck level or -1 for all decks.
+     */
+    public Collection<Card> getCardView(final int level)
+    {
+        return new AbstractCollection<Card>() {
+            public Iterator<Card> iterator()
+            {
+                return level == -1 ? 
+                    new SubtreeCardIterator(Category.this, 0, getNumberOfDecks() - 1) :
+                    new SubtreeCardIterator(Category.this, level, level);
+            }
+
+            public int size()
+            {
+                return getCardCount(level);
+            }
+        };
+    }
+    
     /**
      * @return all expired cards of all decks in this category and its child
-     * categories.
+     * categories. The cards are looked up in the expiration index, so only the
+     * expired cards are visited.
      */
     public List<Card> getExpiredCards()
     {
-        List<Card> expiredCards = getCards();
+        return getExpiredCards(-1);
+    }
+    
+    /**
+     * @return all expired cards of given deck in this category and its child
+     * categories. Returns the expired cards of all decks if -1 is given as 
+     * level.
+     */
+    public List<Card> getExpiredCards(int level)
+    {
+        List<Card> expiredCards = new ArrayList<Card>();
+        collectExpiredCards(Main.getNow().getTime(), level, expiredCards);
         
-        for (Iterator<Card> it = expiredCards.iterator(); it.hasNext();)
+        return expiredCards;
+    }
+    
+    /**
+     * @return the earliest expiration date of all cards in this category and
+     * its child categories that haven't expired yet or <code>null</code> if
+     * there is no such card. This can be used to schedule the next 
+     * EXPIRED_EVENT.
+     */
+    public Date getNextExpirationDate()
+    {
+        long next = getNextExpirationTime(Main.getNow().getTime());
+        return next != Long.MAX_VALUE ? new Date(next) : null;
+    }
+    
+    /**
+     * @return the card of this category and its child categories that will
+     * expire next or <code>null</code> if there is no card that hasn't expired
+     * yet.
+     */
+    public Card getNextExpiringCard()
+    {
+        Date next = getNextExpirationDate();
+        if (next == null)
         {
-            Card card = it.next();
-            if (!card.isExpired())
-            {
-                it.remove();
-            }
+            return null;
         }
         
-        return expiredCards;
+        List<Card> cards = new ArrayList<Card>();
+        collectExpiringCards(next.getTime() - 1, next.getTime(), cards);
+        
+        return cards.get(0);
     }
     
     /**
-     * @return all expired cards of given deck in this category and its child
-     * categories.
+     * @return the number of cards of this category and its child categories
+     * that are due on each of the given number of days. The first value
+     * counts the cards that have already expired at the given date or expire
+     * until the end of its day. The value at index i counts the cards that
+     * expire on the i-th day after it. The cards are looked up in the
+     * expiration index, so only the cards that are due are visited.
      */
-    public List<Card> getExpiredCards(int level)
+    public int[] getDueForecast(Date date, int days)
     {
-        List<Card> expiredCards = getCards(level);
+        int[] forecast = new int[days];
+        if (days == 0)
+            return forecast;
+        
+        // the exclusive end of every day
+        long[] dayEnds = new long[days];
         
-        for (Iterator<Card> it = expiredCards.iterator(); it.hasNext();)
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        
+        for (int i = 0; i < days; i++)
         {
-            Card card = (Card)it.next();
-            if (!card.isExpired())
-            {
-                it.remove();
-            }
+            cal.add(Calendar.DAY_OF_YEAR, 1);
+            dayEnds[i] = cal.getTimeInMillis();
         }
         
-        return expiredCards;
+        collectDueForecast(dayEnds, forecast);
+        
+        return forecast;
     }
     
     /**
@@ -349,6 +457,112 @@ public class Category implements Events
         return m_decks.size() > 0 ? getCards(0) : new ArrayList<Card>();
     }
     
+    /*
+     * Card count methods. These don't copy any card lists and should be
+     * preferred over the card getter methods if only the size is needed.
+     */
+    
+    /**
+     * @return the number of cards of all decks in this category and its child
+     * categories.
+     */
+    public int getCardCount()
+    {
+        int count = 0;
+        for (int i = 0; i < m_cardCounts.length; i++)
+        {
+            count += m_cardCounts[i];
+        }
+        
+        return count;
+    }
+    
+    /**
+     * @param level the deck level.
+     * 
+     * @return the number of cards in the given deck level in this category and
+     * its child categories. Returns the number of cards of all decks if -1 is
+     * given as level.
+     */
+    public int getCardCount(int level)
+    {
+        if (level == -1)
+        {
+            return getCardCount();
+        }
+        
+        return level < m_cardCounts.length ? m_cardCounts[level] : 0;
+    }
+    
+    /**
+     * @return the number of unlearned cards of this category and its child
+     * categories.
+     */
+    public int getUnlearnedCardCount()
+    {
+        return getCardCount(0);
+    }
+    
+    /**
+     * @return the number of expired cards of all decks in this category and
+     * its child categories.
+     */
+    public int getExpiredCardCount()
+    {
+        return getExpiredCardCount(-1);
+    }
+    
+    /**
+     * @return the number of expired cards of given deck in this category and
+     * its child categories. Returns the number of expired cards of all decks
+     * if -1 is given as level.
+     */
+    public int getExpiredCardCount(int level)
+    {
+        // cards expire as time goes by, so this can't be kept as a counter
+        if (level == 0 || getCardCount(level) == 0)
+        {
+            return 0;
+        }
+        
+        return countExpiredCards(Main.getNow().getTime(), level);
+    }
+    
+    /**
+     * @return the number of learned cards of all decks in this category and
+     * its child categories.
+     */
+    public int getLearnedCardCount()
+    {
+        return getCardCount() - getUnlearnedCardCount() - getExpiredCardCount();
+    }
+    
+    /**
+     * @return the number of learned cards in deck with given level.
+     * 
+     * @see #getLearnedCards(int)
+     */
+    public int getLearnedCardCount(int level)
+    {
+        // level 0 decks have no learned cards
+        if (level == 0)
+        {
+            return 0;
+        }
+        
+        return getCardCount(level) - getExpiredCardCount(level);
+    }
+    
+    /**
+     * @return the number of learnable cards in this category.
+     * 
+     * @see #getLearnableCards()
+     */
+    public int getLearnableCardCount()
+    {
+        return getUnlearnedCardCount() + getExpiredCardCount();
+    }
+    
     /**
      * @return All cards that are local to this category. That is all cards 
      * that directly belong to this category and not to any of this child 
@@ -433,6 +647,18 @@ public class Category implements Events
         }
 
         m_childCategories.add(position, category);
+        
+        for (int level = 0; level < category.m_cardCounts.length; level++)
+        {
+            adjustCardCount(level, category.m_cardCounts[level]);
+        }
+        
+        // the cards of the new subtree need ids in this tree
+        category.m_cardsById = null;
+        for (Card card : category.getCardView())
+        {
+            registerCard(card);
+        }
 
         fireCategoryEvent(ADDED_EVENT, category);
         
@@ -450,6 +676,16 @@ public class Category implements Events
 
         m_parent.m_childCategories.remove(this);
         
+        for (int level = 0; level < m_cardCounts.length; level++)
+        {
+            m_parent.adjustCardCount(level, -m_cardCounts[level]);
+        }
+        
+        for (Card card : getCardView())
+        {
+            m_parent.unregisterCard(card);
+        }
+        
         fireCategoryEvent(REMOVED_EVENT, this);
         m_parent = null; // have to release parent AFTER firing event
     }
@@ -475,6 +711,20 @@ public class Category implements Events
         return false;
     }
     
+    /**
+     * @return the number of card ids that were handed out in the category tree
+     * of this category. The ids of all cards in the tree are smaller than this.
+     * Because the ids of removed cards are handed out again, this is at most
+     * the largest number of cards that the tree held at the same time.
+     * 
+     * @see Card#getId()
+     */
+    public int getCardIdCount()
+    {
+        List<Card> cardsById = getRoot().m_cardsById;
+        return cardsById != null ? cardsById.size() : 0;
+    }
+    
     /**
      * @return The parent of this category or <code>null</code> if it has no
      * parent.
@@ -638,9 +888,11 @@ public class Category implements Events
         
         List<Card> cards = m_decks.get(level);
         cards.add(card);
+        adjustCardCount(level, 1);
         
         card.setCategory(this);
         card.setLevel(level);
+        registerCard(card);
         
         // sanity checks
         if (level > 0 && card.getDateExpired() == null)
@@ -648,6 +900,74 @@ public class Category implements Events
         
         if (level == 0)
             card.setDateExpired(null);
+        
+        if (level > 0)
+            addExpiration(card);
+    }
+    
+    /**
+     * Gives the card an id in the category tree of this category, unless it
+     * already has one. Removed cards keep their id, so that they get the same
+     * id again if they are readded, e.g. when a removal is undone, unless the
+     * id was handed out to another card in the meantime.
+     */
+    private void registerCard(Card card)
+    {
+        Category root = getRoot();
+        if (root.m_cardsById == null)
+        {
+            root.m_cardsById = new ArrayList<Card>();
+            root.m_freeCardIds = new BitSet();
+        }
+        
+        int id = card.getId();
+        if (id < 0 || id >= root.m_cardsById.size() || !root.m_freeCardIds.get(id))
+        {
+            if (id >= 0 && id < root.m_cardsById.size() && root.m_cardsById.get(id) == card)
+                return;
+            
+            id = root.m_freeCardIds.nextSetBit(0);
+        }
+        
+        if (id >= 0)
+        {
+            root.m_cardsById.set(id, card);
+            root.m_freeCardIds.clear(id);
+        }
+        else
+        {
+            id = root.m_cardsById.size();
+            root.m_cardsById.add(card);
+        }
+        
+        card.setId(id);
+    }
+    
+    /**
+     * Releases the id of given card, which was removed from the category tree
+     * of this category, so that it can be handed out again. The card keeps
+     * its id until then.
+     */
+    private void unregisterCard(Card card)
+    {
+        Category root = getRoot();
+        int id = card.getId();
+        
+        if (root.m_cardsById != null && id >= 0 && 
+            id < root.m_cardsById.size() && root.m_cardsById.get(id) == card)
+        {
+            root.m_cardsById.set(id, null);
+            root.m_freeCardIds.set(id);
+        }
+    }
+    
+    private Category getRoot()
+    {
+        Category root = this;
+        while (root.m_parent != null)
+            root = root.m_parent;
+        
+        return root;
     }
     
     /**
@@ -661,6 +981,10 @@ public class Category implements Events
             int level = card.getLevel();
             List<Card> cards = m_decks.get(level);
             cards.remove(card);
+            adjustCardCount(level, -1);
+            
+            if (level > 0)
+                removeExpiration(card);
             
             card.setCategory(null);
         }
@@ -692,6 +1016,170 @@ public class Category implements Events
         category.fireCardEvent(DECK_EVENT, card, category, level);
     }
     
+    /**
+     * Adds the card to the expiration index. Note that the expiration date
+     * of a card must not be changed while it is in the index.
+     */
+    private void addExpiration(Card card)
+    {
+        Long time = new Long(card.getDateExpired().getTime());
+        
+        List<Card> cards = m_expirations.get(time);
+        if (cards == null)
+        {
+            cards = new ArrayList<Card>(1);
+            m_expirations.put(time, cards);
+        }
+        
+        cards.add(card);
+    }
+    
+    private void removeExpiration(Card card)
+    {
+        Long time = new Long(card.getDateExpired().getTime());
+        
+        List<Card> cards = m_expirations.get(time);
+        if (cards != null && cards.remove(card) && cards.isEmpty())
+        {
+            m_expirations.remove(time);
+        }
+    }
+    
+    /**
+     * Adds all cards that have expired at given time to the list. Only cards
+     * of given level are added, or all cards if level is -1.
+     */
+    private void collectExpiredCards(long now, int level, List<Card> expiredCards)
+    {
+        // head map is exclusive, so add one to also get cards expiring now
+        for (List<Card> cards : m_expirations.headMap(new Long(now + 1)).values())
+        {
+            for (Card card : cards)
+            {
+                if (level == -1 || card.getLevel() == level)
+                {
+                    expiredCards.add(card);
+                }
+            }
+        }
+        
+        for (Category child : m_childCategories)
+        {
+            child.collectExpiredCards(now, level, expiredCards);
+        }
+    }
+    
+    private int countExpiredCards(long now, int level)
+    {
+        int count = 0;
+        for (List<Card> cards : m_expirations.headMap(new Long(now + 1)).values())
+        {
+            if (level == -1)
+            {
+                count += cards.size();
+                continue;
+            }
+            
+            for (Card card : cards)
+            {
+                if (card.getLevel() == level)
+                {
+                    count++;
+                }
+            }
+        }
+        
+        for (Category child : m_childCategories)
+        {
+            count += child.countExpiredCards(now, level);
+        }
+        
+        return count;
+    }
+    
+    /**
+     * @return the earliest expiration time after given time of all cards in
+     * this category and its child categories or Long.MAX_VALUE if there is no
+     * such card.
+     */
+    private long getNextExpirationTime(long now)
+    {
+        SortedMap<Long, List<Card>> pending = m_expirations.tailMap(new Long(now + 1));
+        long next = pending.isEmpty() ? Long.MAX_VALUE : pending.firstKey().longValue();
+        
+        for (Category child : m_childCategories)
+        {
+            next = Math.min(next, child.getNextExpirationTime(now));
+        }
+        
+        return next;
+    }
+    
+    /**
+     * Adds the number of cards of this category and its child categories
+     * that expire before the end of every day to the forecast.
+     */
+    private void collectDueForecast(long[] dayEnds, int[] forecast)
+    {
+        Long end = new Long(dayEnds[dayEnds.length - 1]);
+        
+        // the index is sorted, so the day only needs to be moved forward
+        int day = 0;
+        for (Map.Entry<Long, List<Card>> entry : m_expirations.headMap(end).entrySet())
+        {
+            long time = entry.getKey().longValue();
+            while (time >= dayEnds[day])
+            {
+                day++;
+            }
+            
+            forecast[day] += entry.getValue().size();
+        }
+        
+        for (Category child : m_childCategories)
+        {
+            child.collectDueForecast(dayEnds, forecast);
+        }
+    }
+    
+    /**
+     * Adds all cards of this category and its child categories to the list
+     * that expire after the <code>from</code> time and not later than the
+     * <code>to</code> time.
+     */
+    void collectExpiringCards(long from, long to, List<Card> expiringCards)
+    {
+        for (List<Card> cards : m_expirations.subMap(new Long(from + 1), new Long(to + 1)).values())
+        {
+            expiringCards.addAll(cards);
+        }
+        
+        for (Category child : m_childCategories)
+        {
+            child.collectExpiringCards(from, to, expiringCards);
+        }
+    }
+    
+    /**
+     * Adds the delta to the card count of given level in this category and all
+     * its parent categories.
+     */
+    private void adjustCardCount(int level, int delta)
+    {
+        for (Category category = this; category != null; category = category.m_parent)
+        {
+            if (category.m_cardCounts.length <= level)
+            {
+                int[] counts = new int[level + 1];
+                System.arraycopy(category.m_cardCounts, 0, counts, 0, 
+                    category.m_cardCounts.length);
+                category.m_cardCounts = counts;
+            }
+            
+            category.m_cardCounts[level] += delta;
+        }
+    }
+    
     private void adjustNumberOfDecks()
     {
         // find child category with most decks
@@ -717,4 +1205,102 @@ public class Category implements Events
             m_decks.remove(getNumberOfDecks()-1);
         }
     }
+    
+    /**
+     * Iterates the cards of a category subtree level by level. For every level
+     * the categories are visited in pre-order. Subtrees that have no cards in
+     * the current level are skipped.
+     */
+    private static class SubtreeCardIterator implements Iterator<Card>
+    {
+        private Category                 m_root;
+        private int                      m_level;
+        private int                      m_lastLevel;
+        
+        private List<Iterator<Category>> m_path  = new ArrayList<Iterator<Category>>();
+        private Iterator<Card>           m_cards = Collections.<Card>emptyList().iterator();
+        private boolean                  m_rootVisited;
+        
+        public SubtreeCardIterator(Category root, int firstLevel, int lastLevel)
+        {
+            m_root      = root;
+            m_level     = firstLevel;
+            m_lastLevel = lastLevel;
+        }
+        
+        public boolean hasNext()
+        {
+            while (!m_cards.hasNext())
+            {
+                Category category = nextCategory();
+                if (category == null)
+                {
+                    return false;
+                }
+                
+                m_cards = category.m_decks.size() > m_level ? 
+                    category.m_decks.get(m_level).iterator() : 
+                    Collections.<Card>emptyList().iterator();
+            }
+            
+            return true;
+        }
+        
+        public Card next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            
+            return m_cards.next();
+        }
+        
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+        
+        private Category nextCategory()
+        {
+            while (m_level <= m_lastLevel)
+            {
+                if (!m_rootVisited)
+                {
+                    m_rootVisited = true;
+                    if (m_root.getCardCount(m_level) > 0)
+                    {
+                        return visit(m_root);
+                    }
+                }
+                
+                while (!m_path.isEmpty())
+                {
+                    Iterator<Category> children = m_path.get(m_path.size() - 1);
+                    if (!children.hasNext())
+                    {
+                        m_path.remove(m_path.size() - 1);
+                        continue;
+                    }
+                    
+                    Category child = children.next();
+                    if (child.getCardCount(m_level) > 0)
+                    {
+                        return visit(child);
+                    }
+                }
+                
+                m_level++;
+                m_rootVisited = false;
+            }
+            
+            return null;
+        }
+        
+        private Category visit(Category category)
+        {
+            m_path.add(category.m_childCategories.iterator());
+            return category;
+        }
+    }
 }
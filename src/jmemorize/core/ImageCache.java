@@ -0,0 +1,202 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.ImageIcon;
+
+/**
+ * A least recently used cache of decoded images. The cache is bounded by the
+ * memory that the decoded pixels need, not by the number of images, so that
+ * a lot of small images or a few large ones can be kept. When an image is
+ * added and the cache would get too large, the images that weren't used for
+ * the longest time are evicted.
+ *
+ * The cache counts its hits, misses and evictions. All methods are
+ * thread-safe.
+ */
+public class ImageCache
+{
+    /**
+     * The size of a decoded pixel, which is usually stored as 32 bit ARGB.
+     */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    // access ordered, so that the eldest entry is the least recently used
+    private LinkedHashMap<String, ImageIcon> m_images =
+        new LinkedHashMap<String, ImageIcon>(16, 0.75f, true);
+
+    private long m_maxBytes;
+    private long m_bytes;
+
+    private long m_hits;
+    private long m_misses;
+    private long m_evictions;
+
+    /**
+     * @param maxBytes the maximum number of bytes of the decoded pixels of
+     * all cached images.
+     */
+    public ImageCache(long maxBytes)
+    {
+        m_maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cached image with given ID or <code>null</code> if it isn't
+     * cached. Marks the image as most recently used.
+     */
+    public synchronized ImageIcon get(String id)
+    {
+        ImageIcon icon = m_images.get(id);
+
+        if (icon != null)
+            m_hits++;
+        else
+            m_misses++;
+
+        return icon;
+    }
+
+    /**
+     * @return <code>true</code> if the image with given ID is cached. Unlike
+     * {@link #get(String)} this neither changes the order of the images nor
+     * the counters.
+     */
+    public synchronized boolean contains(String id)
+    {
+        return m_images.containsKey(id);
+    }
+
+    /**
+     * Adds given image as most recently used image and evicts other images if
+     * necessary. Images that are larger than the whole cache are not added.
+     */
+    public synchronized void put(String id, ImageIcon icon)
+    {
+        remove(id);
+
+        long size = getSize(icon);
+        if (size > m_maxBytes)
+            return;
+
+        m_images.put(id, icon);
+        m_bytes += size;
+
+        evict();
+    }
+
+    public synchronized void remove(String id)
+    {
+        ImageIcon icon = m_images.remove(id);
+        if (icon != null)
+            m_bytes -= getSize(icon);
+    }
+
+    public synchronized void clear()
+    {
+        m_images.clear();
+        m_bytes = 0;
+    }
+
+    /**
+     * Sets the maximum number of bytes of the decoded pixels of all cached
+     * images and evicts images if necessary.
+     */
+    public synchronized void setMaxBytes(long maxBytes)
+    {
+        m_maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getMaxBytes()
+    {
+        return m_maxBytes;
+    }
+
+    /**
+     * @return the number of bytes of the decoded pixels of all cached images.
+     */
+    public synchronized long getBytes()
+    {
+        return m_bytes;
+    }
+
+    public synchronized int size()
+    {
+        return m_images.size();
+    }
+
+    public synchronized long getHits()
+    {
+        return m_hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return m_misses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return m_evictions;
+    }
+
+    public synchronized void resetCounters()
+    {
+        m_hits = 0;
+        m_misses = 0;
+        m_evictions = 0;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "ImageCache(images=" + m_images.size() + //$NON-NLS-1$
+            ", bytes=" + m_bytes + "/" + m_maxBytes +   //$NON-NLS-1$ //$NON-NLS-2$
+            ", hits=" + m_hits + ", misses=" + m_misses + //$NON-NLS-1$ //$NON-NLS-2$
+            ", evictions=" + m_evictions + ")";           //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * @return the number of bytes that the decoded pixels of given image need.
+     */
+    public static long getSize(ImageIcon icon)
+    {
+        // images that couldn't be decoded have no size but still use memory
+        long width = Math.max(icon.getIconWidth(), 1);
+        long height = Math.max(icon.getIconHeight(), 1);
+
+        return width * height * BYTES_PER_PIXEL;
+    }
+
+    private void evict()
+    {
+        Iterator<Map.Entry<String, ImageIcon>> it = m_images.entrySet().iterator();
+        while (m_bytes > m_maxBytes && it.hasNext())
+        {
+            m_bytes -= getSize(it.next().getValue());
+            it.remove();
+            m_evictions++;
+        }
+    }
+}
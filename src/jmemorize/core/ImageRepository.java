@@ -25,35 +25,89 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import javax.swing.ImageIcon;
 
+import jmemorize.util.ImageScaler;
+
 public class ImageRepository
 {
-    private static final int MAX_CACHED_IMAGES = 10;
-
     public static final String IMG_ID_PREFIX = "::";    
     
+    private static final long  THUMBNAIL_CACHE_BYTES = 16 * 1024L * 1024L;
+    
     private static ImageRepository m_instance;
 
     private Map<String, ImageItem> m_imageMap    = new HashMap<String, ImageItem>();
-    private LinkedList<ImageIcon>  m_imageCache  = new LinkedList<ImageIcon>();
+    
+    // all images by the length of their files, to find duplicates quickly
+    private Map<Long, List<ImageItem>> m_sizeMap = new HashMap<Long, List<ImageItem>>();
+    
+    // the IDs of removed duplicates to the IDs of the images they duplicate
+    private Map<String, String>    m_aliasMap    = new HashMap<String, String>();
+    
+    // the memory of the image cache setting is shared by the decoded images
+    // and their scaled copies, which get a quarter of it
+    private ImageCache             m_imageCache  = new ImageCache(
+        getCacheBytes() - getCacheBytes() / 4);
+    
+    // scaled copies of images by image ID and size
+    private ImageCache             m_scaledCache = new ImageCache(
+        getCacheBytes() / 4);
+    
+    private ThumbnailCache         m_thumbnailCache = new ThumbnailCache(
+        Main.THUMBNAIL_DIR, THUMBNAIL_CACHE_BYTES);
+    
+    // the thumbnails by image ID. null for thumbnails that are being created
+    private Map<String, File>      m_thumbnailFiles = new HashMap<String, File>();
+
+    // the zip files that images are read from. They are opened once and
+    // shared by all images of a lesson file until the repository is cleared
+    private Map<File, ZipFile>     m_zipFiles = new HashMap<File, ZipFile>();
+
+    private ExecutorService        m_executor;
+    private Future<?>              m_prefetchTask;
+    
+    // increased with every prefetch request, so that a running prefetch
+    // task notices that it got replaced and stops between two images
+    private volatile int           m_prefetchGeneration;
 
     private static final Pattern   FILE_PATTERN = Pattern.compile("(.*)_(\\d+)");
     
+    /**
+     * An image of the repository. Its bytes are either held in memory or, for
+     * images that were loaded from a zipped lesson, read from the zip file
+     * whenever they are needed. Images are identified by their ID, but two
+     * images with the same content are considered duplicates.
+     */
     public class ImageItem
     {
         private String    m_sourceFile;
-        private byte[]    m_bytes;
+        private byte[]    m_bytes;    // null if stored in zip file
+        private File      m_zipFile;
+        private String    m_zipEntry;
+        private long      m_size;
+        private byte[]    m_digest;   // computed when needed
         private String    m_id;  
  
         public ImageItem(InputStream in, String filename) 
@@ -62,14 +116,40 @@ public class ImageRepository
             m_sourceFile = filename;
             m_id = createId(filename);
             m_bytes = readFile(in);
+            m_size = m_bytes.length;
         }
         
+        /**
+         * @param size the length of the image file or -1 if unknown.
+         */
+        public ImageItem(File zipFile, String zipEntry, String filename, 
+            long size) throws IOException
+        {
+            m_sourceFile = filename;
+            m_id = createId(filename);
+            m_zipFile = zipFile;
+            m_zipEntry = zipEntry;
+            m_size = size >= 0 ? size : getBytes().length;
+        }
+        
+        /**
+         * @return the decoded image or <code>null</code> if the image bytes
+         * couldn't be read.
+         */
         public ImageIcon getImage()
         {
-            ImageIcon image = new ImageIcon(m_bytes);
-            image.setDescription(IMG_ID_PREFIX + m_id);
-            
-            return image;
+            try
+            {
+                ImageIcon image = new ImageIcon(getBytes());
+                image.setDescription(IMG_ID_PREFIX + m_id);
+                
+                return image;
+            }
+            catch (IOException e)
+            {
+                Main.logThrowable("could not read image " + m_id, e);
+                return null;
+            }
         }
 
         public String getId()
@@ -82,9 +162,101 @@ public class ImageRepository
             return m_sourceFile;
         }
         
-        public byte[] getBytes()
+        /**
+         * @return the bytes of the image file. Images that are stored in a zip
+         * file are read again from the shared zip file with every call.
+         */
+        public byte[] getBytes() throws IOException
         {
-            return m_bytes;
+            if (m_bytes != null)
+                return m_bytes;
+            
+            InputStream in = openStream(getSharedZipFile(m_zipFile));
+            try
+            {
+                return readFile(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        
+        /**
+         * @return the length of the image file.
+         */
+        public long getSize()
+        {
+            return m_size;
+        }
+        
+        /**
+         * @return the SHA-256 digest of the image file, which identifies its
+         * content.
+         */
+        public byte[] getDigest() throws IOException
+        {
+            if (m_digest != null)
+                return m_digest;
+            
+            MessageDigest digest = createDigest();
+            if (m_bytes != null)
+            {
+                digest.update(m_bytes);
+            }
+            else
+            {
+                // update the digest without holding the image in memory 
+                InputStream in = openStream(getSharedZipFile(m_zipFile));
+                try
+                {
+                    byte[] buffer = new byte[8192];
+                    
+                    int numRead;
+                    while ((numRead = in.read(buffer)) >= 0)
+                    {
+                        digest.update(buffer, 0, numRead);
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            
+            m_digest = digest.digest();
+            return m_digest;
+        }
+        
+        /**
+         * @return the zip file that contains the image or <code>null</code> if
+         * the image is held in memory.
+         */
+        public File getZipFile()
+        {
+            return m_zipFile;
+        }
+        
+        /**
+         * @return the name of the zip entry that contains the image or
+         * <code>null</code> if the image is held in memory.
+         */
+        public String getZipEntry()
+        {
+            return m_zipEntry;
+        }
+        
+        /**
+         * Opens the entry of the image in given zip file, which needs to be the
+         * one returned by {@link #getZipFile()}.
+         */
+        public InputStream openStream(ZipFile zipFile) throws IOException
+        {
+            ZipEntry entry = zipFile.getEntry(m_zipEntry);
+            if (entry == null)
+                throw new IOException("Missing zip entry " + m_zipEntry);
+            
+            return zipFile.getInputStream(entry);
         }
         
         @Override
@@ -99,7 +271,8 @@ public class ImageRepository
             String extension = filename.substring(dotPos);
             String purename = filename.substring(0, dotPos);
             
-            while (getKeys().contains(purename + extension))
+            while (getKeys().contains(purename + extension) || 
+                m_aliasMap.containsKey(purename + extension))
             {
                 int num = 0;
                 
@@ -156,39 +329,239 @@ public class ImageRepository
     
     public ImageIcon getImage(String imageId)
     {
-        for (ImageIcon icon : m_imageCache)
+        imageId = getCanonicalId(imageId);
+        
+        ImageIcon icon = m_imageCache.get(imageId);
+        if (icon != null)
+            return icon;
+        
+        ImageItem imageItem = getImageItem(imageId);
+        
+        if (imageItem == null)
+            return null;
+        
+        icon = imageItem.getImage();
+        
+        // the image might have been removed while it was decoded
+        synchronized (this)
+        {
+            if (icon != null && m_imageMap.get(imageId) == imageItem)
+                m_imageCache.put(imageId, icon);
+        }
+        
+        return icon;
+    }
+    
+    /**
+     * Decodes the images with given IDs into the image cache on a background
+     * thread, so that a later call to {@link #getImage(String)} doesn't need to
+     * decode them. Images that were requested by an earlier call but that
+     * weren't decoded yet are dropped.
+     */
+    public synchronized void prefetchImages(List<String> imageIds)
+    {
+        cancelPrefetch();
+        
+        final List<String> ids = new ArrayList<String>();
+        for (String id : imageIds)
+        {
+            id = getCanonicalId(id);
+            if (!m_imageCache.contains(id) && m_imageMap.containsKey(id))
+                ids.add(id);
+        }
+        
+        if (ids.isEmpty())
         {
-            if (equals(icon, imageId))
+            m_prefetchTask = null;
+            return;
+        }
+        
+        final int generation = m_prefetchGeneration;
+        m_prefetchTask = getExecutor().submit(new Runnable() {
+            public void run()
             {
-                m_imageCache.remove(icon);
-                m_imageCache.addFirst(icon);
-                
-                return icon;
+                for (String id : ids)
+                {
+                    if (generation != m_prefetchGeneration)
+                        return;
+                    
+                    if (!m_imageCache.contains(id))
+                        getImage(id);
+                }
             }
-        }
+        });
+    }
+    
+    /**
+     * @return a copy of the image with given ID that is scaled to the given
+     * size or <code>null</code> if there is no such image. Scaled copies are
+     * cached, but scaling a large image can take a while, so that this should
+     * not be called on the event dispatch thread if the copy isn't cached
+     * yet.
+     */
+    public ImageIcon getScaledImage(String imageId, int width, int height)
+    {
+        imageId = getCanonicalId(imageId);
+        String key = getScaledKey(imageId, width, height);
         
-        ImageItem imageItem = m_imageMap.get(imageId);
+        ImageIcon scaled = m_scaledCache.get(key);
+        if (scaled != null)
+            return scaled;
         
-        if (imageItem == null)
+        ImageItem imageItem = getImageItem(imageId);
+        ImageIcon icon = getImage(imageId);
+        
+        if (icon == null || icon.getIconWidth() <= 0)
             return null;
         
-        ImageIcon icon = imageItem.getImage();
-        m_imageCache.addFirst(icon);
+        scaled = new ImageIcon(ImageScaler.scale(icon.getImage(), width, height));
+        scaled.setDescription(icon.getDescription());
         
-        if (m_imageCache.size() > MAX_CACHED_IMAGES) // HACK check for memory usage instead
-            m_imageCache.removeLast();
+        // the image might have been removed while it was scaled
+        synchronized (this)
+        {
+            if (m_imageMap.get(imageId) == imageItem)
+                m_scaledCache.put(key, scaled);
+        }
         
-        return icon;
+        return scaled;
     }
     
-    public String addImage(InputStream in, String filename) throws IOException
+    /**
+     * @return the cached copy of the image with given ID in given size or
+     * <code>null</code> if it isn't cached.
+     */
+    public ImageIcon getCachedScaledImage(String imageId, int width, int height)
     {
-
-        ImageItem item = new ImageItem(in, filename);
-        String id = item.getId();
-        m_imageMap.put(id, item);
+        return m_scaledCache.get(getScaledKey(getCanonicalId(imageId), width, height));
+    }
+    
+    /**
+     * Creates a scaled copy of the image with given ID on a background thread.
+     * 
+     * @param onScaled is run on the background thread when the copy was
+     * created. Can be <code>null</code>.
+     * @return the task that can be used to cancel the scaling.
+     */
+    public synchronized Future<?> scaleImageLater(final String imageId, 
+        final int width, final int height, final Runnable onScaled)
+    {
+        return getExecutor().submit(new Runnable() {
+            public void run()
+            {
+                if (getScaledImage(imageId, width, height) != null && onScaled != null)
+                    onScaled.run();
+            }
+        });
+    }
+    
+    /**
+     * @return the thumbnail file of the image with given ID or 
+     * <code>null</code> if there is no thumbnail yet. In that case it is 
+     * created on a background thread, so that it is returned by a later call.
+     */
+    public synchronized File getThumbnail(String imageId)
+    {
+        final String id = getCanonicalId(imageId);
         
-        return id;
+        if (m_thumbnailFiles.containsKey(id))
+            return m_thumbnailFiles.get(id);
+        
+        final ImageItem item = m_imageMap.get(id);
+        if (item == null)
+            return null;
+        
+        m_thumbnailFiles.put(id, null);
+        getExecutor().submit(new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    File file = m_thumbnailCache.getThumbnail(item);
+                    synchronized (ImageRepository.this)
+                    {
+                        if (m_imageMap.get(id) == item)
+                            m_thumbnailFiles.put(id, file);
+                    }
+                }
+                catch (IOException e)
+                {
+                    Main.logThrowable("could not create thumbnail of " + id, e);
+                    
+                    // try again when the thumbnail is requested the next time
+                    synchronized (ImageRepository.this)
+                    {
+                        if (m_thumbnailFiles.get(id) == null)
+                            m_thumbnailFiles.remove(id);
+                    }
+                }
+            }
+        });
+        
+        return null;
+    }
+    
+    /**
+     * @return the cache of decoded images.
+     */
+    public ImageCache getImageCache()
+    {
+        return m_imageCache;
+    }
+    
+    /**
+     * Adds the image of given stream. If the repository already contains an
+     * image with the same content, no image is added and the ID of the
+     * contained image is returned.
+     */
+    public synchronized String addImage(InputStream in, String filename) throws IOException
+    {
+        return addItem(new ImageItem(in, filename));
+    }
+    
+    /**
+     * Adds an image that is stored in a zip file without reading it. The image
+     * is read from the zip file when it is needed. If the repository already
+     * contains an image with the same content, no image is added and the ID 
+     * of the contained image is returned.
+     * 
+     * @param size the length of the image file or -1 if unknown.
+     */
+    public synchronized String addImage(File zipFile, String zipEntry, 
+        String filename, long size) throws IOException
+    {
+        return addItem(new ImageItem(zipFile, zipEntry, filename, size));
+    }
+    
+    /**
+     * Duplicate images are not kept in the repository. The ID of a duplicate
+     * is mapped to the ID of the image that it duplicates instead, so that
+     * cards can still refer to it.
+     * 
+     * @return the ID of the image that is stored for given ID. This is the
+     * given ID itself if it isn't the ID of a duplicate.
+     */
+    public synchronized String getCanonicalId(String imageId)
+    {
+        String id = m_aliasMap.get(imageId);
+        return id != null ? id : imageId;
+    }
+    
+    /**
+     * @return the given IDs with all IDs of duplicates replaced by the IDs of
+     * the images they duplicate. The order is kept.
+     */
+    public synchronized List<String> toCanonicalIds(List<String> imageIds)
+    {
+        List<String> ids = new ArrayList<String>(imageIds.size());
+        for (String id : imageIds)
+        {
+            id = getCanonicalId(id);
+            if (!ids.contains(id))
+                ids.add(id);
+        }
+        
+        return ids;
     }
     
     public String addImage(ImageIcon icon) throws IOException
@@ -254,15 +627,25 @@ public class ImageRepository
     /**
      * Retains all images with given IDs. All other images are removed.
      */
-    public void retain(Set<String> retainIDs)
+    public synchronized void retain(Set<String> retainIDs)
     {
         Set<String> toBeRemoved = new HashSet<String>(m_imageMap.keySet());
         
         for (String id : retainIDs)
-            toBeRemoved.remove(id);
+            toBeRemoved.remove(getCanonicalId(id));
         
         for (String id : toBeRemoved)
-            m_imageMap.remove(id);
+        {
+            ImageItem item = m_imageMap.remove(id);
+            m_sizeMap.get(new Long(item.getSize())).remove(item);
+            m_imageCache.remove(id);
+            m_thumbnailFiles.remove(id);
+        }
+        
+        if (!toBeRemoved.isEmpty())
+            m_scaledCache.clear();
+        
+        m_aliasMap.values().removeAll(toBeRemoved);
     }
     
     public static boolean equals(ImageIcon image, String id)
@@ -315,9 +698,221 @@ public class ImageRepository
         return images;
     }
     
-    public void clear()
+    /**
+     * @return the opened zip file for given file. It is shared by all images
+     * that are stored in the file and must not be closed by the caller. It 
+     * stays open until the repository is cleared or its images are moved to
+     * another zip file.
+     */
+    public synchronized ZipFile getSharedZipFile(File file) throws IOException
     {
-        m_imageMap.clear();        
+        ZipFile zipFile = m_zipFiles.get(file);
+        if (zipFile == null)
+        {
+            zipFile = new ZipFile(file);
+            m_zipFiles.put(file, zipFile);
+        }
+        
+        return zipFile;
+    }
+    
+    /**
+     * Points all images that are read from a zip file at given zip file,
+     * after they were saved to it. The zip files that they were read from
+     * before are closed, so that these can be overwritten or moved.
+     * 
+     * @param entryNames the names of the zip entries that the images were
+     * saved to by image ID.
+     */
+    public synchronized void setZipFile(File zipFile, Map<String, String> entryNames)
+    {
+        for (ImageItem item : m_imageMap.values())
+        {
+            if (item.m_zipFile == null)
+                continue;
+            
+            item.m_zipFile = zipFile;
+            if (entryNames.containsKey(item.getId()))
+                item.m_zipEntry = entryNames.get(item.getId());
+        }
+        
+        closeZipFiles(zipFile);
+    }
+    
+    /**
+     * Points all images that are read from the given zip file at a copy of
+     * it, so that the original file can be removed.
+     */
+    public synchronized void moveZipFile(File oldFile, File newFile)
+    {
+        for (ImageItem item : m_imageMap.values())
+        {
+            if (oldFile.equals(item.m_zipFile))
+                item.m_zipFile = newFile;
+        }
+        
+        closeZipFiles(newFile);
+    }
+    
+    public synchronized void clear()
+    {
+        cancelPrefetch();
+        
+        logCounters("image cache", m_imageCache);        //$NON-NLS-1$
+        logCounters("scaled image cache", m_scaledCache); //$NON-NLS-1$
+        
+        m_imageMap.clear();
+        m_sizeMap.clear();
+        m_aliasMap.clear();
+        m_imageCache.clear();
+        m_scaledCache.clear();
+        m_thumbnailFiles.clear();
+        
+        closeZipFiles(null);
+    }
+    
+    /**
+     * Removes the pending prefetch task from the queue and stops it between
+     * two images if it is already running.
+     */
+    private void cancelPrefetch()
+    {
+        m_prefetchGeneration++;
+        
+        if (m_prefetchTask != null)
+            m_prefetchTask.cancel(false);
+    }
+    
+    /**
+     * Closes all shared zip files except the given one.
+     */
+    private void closeZipFiles(File keepFile)
+    {
+        Iterator<Map.Entry<File, ZipFile>> it = m_zipFiles.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<File, ZipFile> entry = it.next();
+            if (entry.getKey().equals(keepFile))
+                continue;
+            
+            try
+            {
+                entry.getValue().close();
+            }
+            catch (IOException e)
+            {
+                Main.logThrowable("could not close " + entry.getKey(), e);
+            }
+            
+            it.remove();
+        }
+    }
+    
+    /**
+     * Adds given item unless it is a duplicate of a contained image.
+     * 
+     * @return the ID of the added or contained image.
+     */
+    private String addItem(ImageItem item) throws IOException
+    {
+        Long size = new Long(item.getSize());
+        List<ImageItem> sameSize = m_sizeMap.get(size);
+        
+        if (sameSize == null)
+        {
+            sameSize = new LinkedList<ImageItem>();
+            m_sizeMap.put(size, sameSize);
+        }
+        
+        // only images of the same length need to be compared
+        for (ImageItem other : sameSize)
+        {
+            if (Arrays.equals(other.getDigest(), item.getDigest()))
+            {
+                m_aliasMap.put(item.getId(), other.getId());
+                return other.getId();
+            }
+        }
+        
+        sameSize.add(item);
+        m_imageMap.put(item.getId(), item);
+        
+        return item.getId();
+    }
+    
+    private static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private synchronized ImageItem getImageItem(String imageId)
+    {
+        return m_imageMap.get(imageId);
+    }
+    
+    /**
+     * @return the memory in bytes that both image caches may use together.
+     */
+    /**
+     * Sets the memory that decoded images and their scaled copies may use
+     * together. Images are evicted from the caches if necessary.
+     * 
+     * @param megabytes the size of both image caches together.
+     */
+    public void setCacheSize(int megabytes)
+    {
+        long bytes = megabytes * 1024L * 1024L;
+        
+        m_imageCache.setMaxBytes(bytes - bytes / 4);
+        m_scaledCache.setMaxBytes(bytes / 4);
+    }
+    
+    private static long getCacheBytes()
+    {
+        return Settings.loadImageCacheSize() * 1024L * 1024L;
+    }
+    
+    private static void logCounters(String name, ImageCache cache)
+    {
+        Main.getLogger().fine(name + ": " + cache.getHits() + " hits, " + //$NON-NLS-1$ //$NON-NLS-2$
+            cache.getMisses() + " misses, " +                           //$NON-NLS-1$
+            cache.getEvictions() + " evictions");                       //$NON-NLS-1$
+        
+        cache.resetCounters();
+    }
+    
+    private static String getScaledKey(String imageId, int width, int height)
+    {
+        return imageId + '@' + width + 'x' + height;
+    }
+    
+    private synchronized ExecutorService getExecutor()
+    {
+        if (m_executor == null)
+            m_executor = createExecutor();
+        
+        return m_executor;
+    }
+    
+    private ExecutorService createExecutor()
+    {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "image-loader"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
     }
     
     private ImageRepository() // singleton
@@ -19,6 +19,7 @@
 package jmemorize.core;
 
 import java.io.File;
+import java.util.Date;
 
 import jmemorize.core.learn.LearnHistory;
 import jmemorize.gui.LC;
@@ -37,6 +38,7 @@ public class Lesson implements CategoryObserver
     //Removed this variable because its redundant
     private Category          mRootCategory;
     private LearnHistory      mLearnHistory = new LearnHistory();
+    private SearchIndex       mSearchIndex;
     
     public Lesson(boolean canSave)
     {
@@ -73,6 +75,22 @@ public class Lesson implements CategoryObserver
         return mLearnHistory;
     }
     
+    /**
+     * @return the full text index over all cards of this lesson. The index is
+     * created on first access and kept up to date afterwards. Needs to be
+     * called on the event dispatch thread, but the index is only built by
+     * its first search, which can run on a background thread.
+     */
+    public SearchIndex getSearchIndex()
+    {
+        if (mSearchIndex == null)
+        {
+            mSearchIndex = new SearchIndex(mRootCategory);
+        }
+        
+        return mSearchIndex;
+    }
+    
     /**
      * @return <code>true</code> if saving is needed for this lesson.
      */
@@ -89,6 +107,17 @@ public class Lesson implements CategoryObserver
         return mRootCategory;
     }
     
+    /**
+     * @return the number of cards that are due today and on each of the
+     * following days.
+     * 
+     * @see Category#getDueForecast(Date, int)
+     */
+    public int[] getDueForecast(int days)
+    {
+        return mRootCategory.getDueForecast(Main.getNow(), days);
+    }
+    
     /*
      * @see jmemorize.core.CategoryObserver
      */
@@ -18,6 +18,8 @@
  */
 package jmemorize.core;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -27,6 +29,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URL;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -39,6 +42,9 @@ import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 import java.util.prefs.Preferences;
 
+import javax.swing.Timer;
+
+import jmemorize.core.io.LessonSnapshot;
 import jmemorize.core.io.XmlBuilder;
 import jmemorize.core.learn.DefaultLearnSession;
 import jmemorize.core.learn.LearnHistory;
@@ -75,6 +81,9 @@ public class Main extends Observable implements LearnSessionProvider,
     public static final File            STATS_FILE               = 
         new File(System.getProperty("user.home")+"/.jmemorize-stats.xml"); //$NON-NLS-1$ //$NON-NLS-2$
 
+    public static final File            THUMBNAIL_DIR            = 
+        new File(System.getProperty("user.home")+"/.jmemorize-thumbnails"); //$NON-NLS-1$ //$NON-NLS-2$
+
     private RecentItems                 m_recentFiles           = 
         new RecentItems(5, USER_PREFS.node("recent.files"));        //$NON-NLS-1$
 
@@ -85,6 +94,10 @@ public class Main extends Observable implements LearnSessionProvider,
     private LearnSettings               m_learnSettings;
     private LearnHistory                m_globalLearnHistory;
     private int                         m_runningSessions       = 0;
+    
+    private Timer                       m_expirationTimer;
+    private long                        m_nextExpiration        = Long.MAX_VALUE;
+    private long                        m_lastExpirationCheck;
 
     // observers
     private List<LessonObserver>        m_lessonObservers       = 
@@ -149,6 +162,9 @@ public class Main extends Observable implements LearnSessionProvider,
         }
         
         fireLessonLoaded(m_lesson);
+        
+        m_lastExpirationCheck = getNow().getTime();
+        startExpirationTimer();
     }
 
     /* (non-Javadoc)
@@ -160,14 +176,12 @@ public class Main extends Observable implements LearnSessionProvider,
         {
             ImageRepository.getInstance().clear();
             
-            Lesson lesson = new Lesson(false);
-            XmlBuilder.loadFromXMLFile(file, lesson);
+            Lesson lesson = loadLessonFile(file);
             lesson.setFile(file);
             lesson.setCanSave(false);
             m_recentFiles.push(file.getAbsolutePath());
             
             setLesson(lesson);
-            //startExpirationTimer(); TODO expiration timer
         } 
         catch (Exception e)
         {
@@ -189,6 +203,9 @@ public class Main extends Observable implements LearnSessionProvider,
             
             file.delete();
             copyFile(tempFile, file);
+            ImageRepository.getInstance().moveZipFile(tempFile, file);
+            
+            saveSnapshot(lesson, file);
             
             lesson.setFile(file); // note: sets file only if no exception
             lesson.setCanSave(false);
@@ -205,6 +222,59 @@ public class Main extends Observable implements LearnSessionProvider,
         }
     }
     
+    /**
+     * Loads the lesson from its snapshot if there is an up to date one.
+     * Otherwise the lesson is loaded from the lesson file itself.
+     */
+    private Lesson loadLessonFile(File file) throws Exception
+    {
+        if (LessonSnapshot.isUpToDate(file))
+        {
+            try
+            {
+                Lesson lesson = new Lesson(false);
+                LessonSnapshot.load(file, lesson);
+                XmlBuilder.loadImageRepository(file, lesson);
+                
+                return lesson;
+            }
+            catch (IOException e)
+            {
+                logThrowable("Could not load snapshot of " + file, e);
+                ImageRepository.getInstance().clear();
+            }
+        }
+        
+        Lesson lesson = new Lesson(false);
+        XmlBuilder.loadFromXMLFile(file, lesson);
+        
+        return lesson;
+    }
+    
+    /**
+     * Writes or removes the snapshot of the lesson file according to the
+     * settings. The lesson file has been saved already at this point, so
+     * failures are only logged.
+     */
+    private void saveSnapshot(Lesson lesson, File file)
+    {
+        File snapshotFile = LessonSnapshot.getSnapshotFile(file);
+        
+        try
+        {
+            if (Settings.loadIsSaveSnapshot())
+                LessonSnapshot.save(file, lesson);
+            
+            else if (snapshotFile.exists())
+                snapshotFile.delete();
+        }
+        catch (IOException e)
+        {
+            logThrowable("Could not save snapshot of " + file, e);
+            snapshotFile.delete();
+        }
+    }
+    
     /* (non-Javadoc)
      * Declared in jmemorize.core.LessonProvider
      */
@@ -368,6 +438,17 @@ public class Main extends Observable implements LearnSessionProvider,
     public void onCardEvent(int type, Card card, Category category, int deck)
     {
         fireLessonModified(m_lesson);
+        
+        // the timer only needs to be rescheduled if the card expires before
+        // it fires. if it fires too early, e.g. because the card that it
+        // waited for was removed, it is just rescheduled then
+        Date expiration = card.getDateExpired();
+        if (type != EXPIRED_EVENT && expiration != null &&
+            expiration.getTime() > m_lastExpirationCheck &&
+            expiration.getTime() < m_nextExpiration)
+        {
+            scheduleExpirationTimer(expiration.getTime());
+        }
     }
 
     /* (non-Javadoc)
@@ -511,6 +592,70 @@ public class Main extends Observable implements LearnSessionProvider,
         m_globalLearnHistory = new LearnHistory(STATS_FILE);
     }
     
+    /**
+     * Schedules a timer that fires a EXPIRED_EVENT as soon as the next card of
+     * the current lesson expires. This replaces polling the cards for their
+     * expiration status.
+     */
+    private void startExpirationTimer()
+    {
+        Date next = m_lesson.getRootCategory().getNextExpirationDate();
+        scheduleExpirationTimer(next != null ? next.getTime() : Long.MAX_VALUE);
+    }
+    
+    /**
+     * Lets the expiration timer fire at given time, replacing the time that
+     * it was scheduled for before.
+     * 
+     * @param time the time in milliseconds or <code>Long.MAX_VALUE</code> to
+     * stop the timer.
+     */
+    private void scheduleExpirationTimer(long time)
+    {
+        if (m_expirationTimer == null)
+        {
+            m_expirationTimer = new Timer(0, new ActionListener() {
+                public void actionPerformed(ActionEvent e)
+                {
+                    fireExpiredEvents();
+                    startExpirationTimer();
+                }
+            });
+            m_expirationTimer.setRepeats(false);
+        }
+        
+        m_nextExpiration = time;
+        if (time == Long.MAX_VALUE)
+        {
+            m_expirationTimer.stop();
+            return;
+        }
+        
+        long delay = Math.max(0, time - getNow().getTime());
+        m_expirationTimer.setInitialDelay((int)Math.min(delay, Integer.MAX_VALUE));
+        m_expirationTimer.restart();
+    }
+    
+    /**
+     * Fires a EXPIRED_EVENT for all cards that have expired since the last
+     * check.
+     */
+    private void fireExpiredEvents()
+    {
+        long now = getNow().getTime();
+        
+        List<Card> expiredCards = new ArrayList<Card>();
+        m_lesson.getRootCategory().collectExpiringCards(
+            m_lastExpirationCheck, now, expiredCards);
+        m_lastExpirationCheck = now;
+        
+        for (Card card : expiredCards)
+        {
+            Category category = card.getCategory();
+            category.fireCardEvent(EXPIRED_EVENT, card, category, card.getLevel());
+        }
+    }
+    
     private void fireLessonLoaded(Lesson lesson)
     {
         lesson.getRootCategory().addObserver(this);
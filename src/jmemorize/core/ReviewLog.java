@@ -0,0 +1,340 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.io.ByteArrayOutputStream;
+
+import jmemorize.util.Base64;
+
+/**
+ * The reviews of a single card. Every review records when the card was
+ * checked, whether it was passed, which side was shown, how long the user
+ * needed to answer and the level of the card before and after the review.
+ *
+ * The reviews are not stored as objects but in one primitive array per
+ * column, so that a review only needs 15 bytes of memory. The log is stored
+ * in the lesson as a single compact byte sequence in which the timestamps
+ * are delta encoded as variable length integers.
+ */
+public class ReviewLog
+{
+    public static final int    PASSED          = 1;
+    public static final int    FLIPPED         = 2;
+
+    private static final int   FORMAT_VERSION  = 1;
+    private static final int   INITIAL_SIZE    = 4;
+
+    private long[]             m_times         = new long[INITIAL_SIZE];
+    private int[]              m_responseTimes = new int[INITIAL_SIZE];
+    private byte[]             m_flags         = new byte[INITIAL_SIZE];
+    private byte[]             m_levelsBefore  = new byte[INITIAL_SIZE];
+    private byte[]             m_levelsAfter   = new byte[INITIAL_SIZE];
+
+    private int                m_size;
+
+    /**
+     * Appends a review.
+     *
+     * @param time the time of the review in milliseconds.
+     * @param passed <code>true</code> if the card was passed.
+     * @param flipped <code>true</code> if the back side was shown first.
+     * @param responseTime the time in milliseconds between showing the card
+     * and checking it.
+     * @param levelBefore the level of the card before the review.
+     * @param levelAfter the level of the card after the review.
+     */
+    public void add(long time, boolean passed, boolean flipped,
+        int responseTime, int levelBefore, int levelAfter)
+    {
+        ensureCapacity(m_size + 1);
+
+        m_times[m_size] = time;
+        m_responseTimes[m_size] = Math.max(responseTime, 0);
+        m_flags[m_size] = (byte)((passed ? PASSED : 0) | (flipped ? FLIPPED : 0));
+        m_levelsBefore[m_size] = toByte(levelBefore);
+        m_levelsAfter[m_size] = toByte(levelAfter);
+        m_size++;
+    }
+
+    public int size()
+    {
+        return m_size;
+    }
+
+    public boolean isEmpty()
+    {
+        return m_size == 0;
+    }
+
+    public void clear()
+    {
+        m_size = 0;
+    }
+
+    public long getTime(int index)
+    {
+        checkIndex(index);
+        return m_times[index];
+    }
+
+    public boolean isPassed(int index)
+    {
+        checkIndex(index);
+        return (m_flags[index] & PASSED) != 0;
+    }
+
+    public boolean isFlipped(int index)
+    {
+        checkIndex(index);
+        return (m_flags[index] & FLIPPED) != 0;
+    }
+
+    public int getResponseTime(int index)
+    {
+        checkIndex(index);
+        return m_responseTimes[index];
+    }
+
+    public int getLevelBefore(int index)
+    {
+        checkIndex(index);
+        return m_levelsBefore[index];
+    }
+
+    public int getLevelAfter(int index)
+    {
+        checkIndex(index);
+        return m_levelsAfter[index];
+    }
+
+    /**
+     * @return the number of reviews that were passed.
+     */
+    public int getPassedCount()
+    {
+        int passed = 0;
+        for (int i = 0; i < m_size; i++)
+        {
+            if ((m_flags[i] & PASSED) != 0)
+                passed++;
+        }
+
+        return passed;
+    }
+
+    /**
+     * @return the compact binary form of this log.
+     */
+    public byte[] toByteArray()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + m_size * 6);
+
+        writeVarLong(out, FORMAT_VERSION);
+        writeVarLong(out, m_size);
+
+        long last = 0;
+        for (int i = 0; i < m_size; i++)
+        {
+            // reviews are usually appended in order, but clock changes can
+            // produce negative deltas
+            long delta = m_times[i] - last;
+            writeVarLong(out, (delta << 1) ^ (delta >> 63));
+            last = m_times[i];
+        }
+
+        for (int i = 0; i < m_size; i++)
+            writeVarLong(out, m_responseTimes[i]);
+
+        out.write(m_flags, 0, m_size);
+        out.write(m_levelsBefore, 0, m_size);
+        out.write(m_levelsAfter, 0, m_size);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the log that was written by {@link #toByteArray()}.
+     * @throws IllegalArgumentException if the data is corrupted.
+     */
+    public static ReviewLog fromByteArray(byte[] bytes)
+    {
+        int[] pos = new int[1];
+
+        if (readVarLong(bytes, pos) != FORMAT_VERSION)
+            throw new IllegalArgumentException("unknown review log format"); //$NON-NLS-1$
+
+        long size = readVarLong(bytes, pos);
+        if (size < 0 || size > bytes.length)
+            throw new IllegalArgumentException("review log is corrupted"); //$NON-NLS-1$
+
+        ReviewLog log = new ReviewLog();
+        log.ensureCapacity((int)size);
+        log.m_size = (int)size;
+
+        long last = 0;
+        for (int i = 0; i < size; i++)
+        {
+            long zigzag = readVarLong(bytes, pos);
+            last += (zigzag >>> 1) ^ -(zigzag & 1);
+            log.m_times[i] = last;
+        }
+
+        for (int i = 0; i < size; i++)
+            log.m_responseTimes[i] = (int)readVarLong(bytes, pos);
+
+        if (pos[0] + 3 * size != bytes.length)
+            throw new IllegalArgumentException("review log is corrupted"); //$NON-NLS-1$
+
+        System.arraycopy(bytes, pos[0], log.m_flags, 0, (int)size);
+        System.arraycopy(bytes, pos[0] + (int)size, log.m_levelsBefore, 0, (int)size);
+        System.arraycopy(bytes, pos[0] + 2 * (int)size, log.m_levelsAfter, 0, (int)size);
+
+        return log;
+    }
+
+    /**
+     * @return the compact binary form of this log as text that can be stored
+     * in XML attributes.
+     */
+    public String encode()
+    {
+        return Base64.encode(toByteArray());
+    }
+
+    /**
+     * @return the log that was written by {@link #encode()}.
+     * @throws IllegalArgumentException if the text is corrupted.
+     */
+    public static ReviewLog decode(String text)
+    {
+        return fromByteArray(Base64.decode(text));
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof ReviewLog))
+            return false;
+
+        ReviewLog other = (ReviewLog)obj;
+        if (m_size != other.m_size)
+            return false;
+
+        for (int i = 0; i < m_size; i++)
+        {
+            if (m_times[i] != other.m_times[i] ||
+                m_responseTimes[i] != other.m_responseTimes[i] ||
+                m_flags[i] != other.m_flags[i] ||
+                m_levelsBefore[i] != other.m_levelsBefore[i] ||
+                m_levelsAfter[i] != other.m_levelsAfter[i])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode()
+    {
+        return m_size == 0 ? 0 : (int)(m_times[m_size - 1] ^ m_size);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "ReviewLog(" + m_size + " reviews)"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= m_times.length)
+            return;
+
+        int newCapacity = Math.max(capacity, m_times.length * 2);
+
+        long[] times = new long[newCapacity];
+        System.arraycopy(m_times, 0, times, 0, m_size);
+        m_times = times;
+
+        int[] responseTimes = new int[newCapacity];
+        System.arraycopy(m_responseTimes, 0, responseTimes, 0, m_size);
+        m_responseTimes = responseTimes;
+
+        m_flags = copyOf(m_flags, newCapacity);
+        m_levelsBefore = copyOf(m_levelsBefore, newCapacity);
+        m_levelsAfter = copyOf(m_levelsAfter, newCapacity);
+    }
+
+    private byte[] copyOf(byte[] array, int capacity)
+    {
+        byte[] copy = new byte[capacity];
+        System.arraycopy(array, 0, copy, 0, m_size);
+        return copy;
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= m_size)
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + m_size); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static byte toByte(int level)
+    {
+        return (byte)Math.min(Math.max(level, 0), Byte.MAX_VALUE);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int)(value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+
+    private static long readVarLong(byte[] bytes, int[] pos)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            if (pos[0] >= bytes.length)
+                throw new IllegalArgumentException("review log is corrupted"); //$NON-NLS-1$
+
+            int b = bytes[pos[0]++];
+            value |= (long)(b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+                return value;
+        }
+
+        throw new IllegalArgumentException("review log is corrupted"); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,539 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted trigram index over the unformatted text of all card sides of
+ * a category tree. It answers the same substring queries as
+ * {@link SearchTool#search(String, int, boolean, java.util.Collection)} but
+ * only has to verify the cards that contain all trigrams of the search text.
+ *
+ * The index observes the root category. Every indexed card gets a slot
+ * number. Slots are only ever appended, so the posting lists stay sorted and
+ * can be intersected by merging. Removed cards leave dead slots behind that
+ * are dropped when the index gets compacted.
+ * 
+ * The index is created and updated on the thread that changes the category
+ * tree (i.e. the event dispatch thread), but only copies the texts of the
+ * added and changed cards there. These changes are queued and worked into
+ * the index by the next search, which can run on a background thread. So
+ * the first search builds the index and card events never wait for a
+ * running search.
+ */
+public class SearchIndex implements CategoryObserver
+{
+    private static final int       GRAM_LENGTH    = 3;
+    private static final int       MIN_COMPACTION = 1024;
+
+    private static final int       FRONT          = 0;
+    private static final int       BACK           = 1;
+
+    private Category               m_root;
+
+    // only accessed by searches, which are synchronized on the index
+    private List<Card>             m_cards        = new ArrayList<Card>();     // by slot, null if dead
+    private List<String[]>         m_texts        = new ArrayList<String[]>(); // texts by slot
+    private Map<Card, Integer>     m_slots        = new HashMap<Card, Integer>();
+    private int                    m_deadSlots;
+
+    private List<Map<Long, Postings>> m_postings  = new ArrayList<Map<Long, Postings>>(2);
+
+    // the changes that weren't worked into the index yet. guarded by itself
+    private List<Change>           m_changes      = new ArrayList<Change>();
+
+    /**
+     * Gets the found cards of a search in chunks while the search is still
+     * running.
+     */
+    public interface SearchObserver
+    {
+        /**
+         * @param cards the cards that were found since the last call.
+         * @return <code>false</code> if the search should be stopped.
+         */
+        public boolean onCardsFound(List<Card> cards);
+    }
+
+    /**
+     * A card that was added, changed or removed, with the texts that it had
+     * at that time.
+     */
+    private static class Change
+    {
+        private Card     m_card;
+        private String[] m_texts; // null if removed
+
+        public Change(Card card, boolean removed)
+        {
+            m_card = card;
+            if (!removed)
+            {
+                m_texts = new String[] {
+                    card.getFrontSide().getText().getUnformatted(),
+                    card.getBackSide().getText().getUnformatted()};
+            }
+        }
+    }
+
+    /**
+     * A sorted list of slot numbers.
+     */
+    private static class Postings
+    {
+        private int[] m_slots = new int[2];
+        private int   m_size;
+
+        public void add(int slot)
+        {
+            // a gram can appear more then once in the same text
+            if (m_size > 0 && m_slots[m_size - 1] == slot)
+                return;
+
+            if (m_size == m_slots.length)
+            {
+                int[] slots = new int[m_size * 2];
+                System.arraycopy(m_slots, 0, slots, 0, m_size);
+                m_slots = slots;
+            }
+
+            m_slots[m_size++] = slot;
+        }
+    }
+
+    /**
+     * Hands the found cards of a search to an observer in chunks.
+     */
+    private static class Chunker
+    {
+        private SearchObserver m_observer;
+        private int            m_chunkSize;
+        private int            m_published;
+        private boolean        m_running = true;
+
+        public Chunker(SearchObserver observer, int chunkSize)
+        {
+            m_observer = observer;
+            m_chunkSize = chunkSize;
+        }
+
+        public boolean isRunning()
+        {
+            return m_running;
+        }
+
+        public void update(List<Card> foundCards)
+        {
+            if (m_observer != null && foundCards.size() - m_published >= m_chunkSize)
+                publish(foundCards);
+        }
+
+        public void finish(List<Card> foundCards)
+        {
+            if (m_observer != null && m_running && foundCards.size() > m_published)
+                publish(foundCards);
+        }
+
+        private void publish(List<Card> foundCards)
+        {
+            List<Card> chunk = new ArrayList<Card>(
+                foundCards.subList(m_published, foundCards.size()));
+            m_published = foundCards.size();
+            m_running = m_observer.onCardsFound(chunk);
+        }
+    }
+
+    /**
+     * Creates a new index for all cards of the given category and its child
+     * categories and registers it as observer of the category. Needs to be
+     * called on the thread that changes the category tree. The index itself
+     * is built by the first search.
+     */
+    public SearchIndex(Category root)
+    {
+        m_root = root;
+        m_postings.add(new HashMap<Long, Postings>());
+        m_postings.add(new HashMap<Long, Postings>());
+
+        addChanges(root, false);
+        root.addObserver(this);
+    }
+
+    /**
+     * Searches all cards in the given category and its child categories.
+     *
+     * @param text the text that is searched for.
+     * @param side one of {@link SearchTool#FRONT_SIDE},
+     * {@link SearchTool#FLIP_SIDE} or {@link SearchTool#BOTH_SIDES}.
+     * @param matchCase <code>true</code> if the search should be case
+     * sensitive.
+     * @param category the category in which to search. Needs to be part of the
+     * indexed category tree.
+     *
+     * @return all cards that contain the search text on the given side(s).
+     */
+    public List<Card> search(String text, int side, boolean matchCase,
+        Category category)
+    {
+        return search(text, side, matchCase, category, null, 0);
+    }
+
+    /**
+     * Searches like {@link #search(String, int, boolean, Category)}, but
+     * hands the found cards to the given observer whenever a chunk of cards
+     * was found.
+     *
+     * @param observer the observer for the chunks. Can be <code>null</code>.
+     * @param chunkSize the number of found cards per chunk. The last chunk
+     * can be smaller.
+     *
+     * @return all cards that were found until the search was finished or
+     * stopped by the observer.
+     */
+    public synchronized List<Card> search(String text, int side, boolean matchCase,
+        Category category, SearchObserver observer, int chunkSize)
+    {
+        applyChanges();
+
+        Chunker chunker = new Chunker(observer, chunkSize);
+        String lowerText = text.toLowerCase();
+        boolean front = side == SearchTool.FRONT_SIDE || side == SearchTool.BOTH_SIDES;
+        boolean back  = side == SearchTool.FLIP_SIDE  || side == SearchTool.BOTH_SIDES;
+
+        List<Card> foundCards = new ArrayList<Card>();
+
+        // texts that are shorter then a gram can't use the index
+        if (lowerText.length() < GRAM_LENGTH)
+        {
+            for (int slot = 0; slot < m_cards.size() && chunker.isRunning(); slot++)
+            {
+                addIfFound(slot, text, lowerText, front, back, matchCase,
+                    category, foundCards);
+                chunker.update(foundCards);
+            }
+
+            chunker.finish(foundCards);
+            return foundCards;
+        }
+
+        int[] frontSlots = front ? findCandidates(FRONT, lowerText) : new int[0];
+        int[] backSlots  = back  ? findCandidates(BACK, lowerText)  : new int[0];
+
+        // merge both sorted candidate lists
+        int i = 0, j = 0;
+        while ((i < frontSlots.length || j < backSlots.length) && chunker.isRunning())
+        {
+            int slot;
+            if (j == backSlots.length ||
+                (i < frontSlots.length && frontSlots[i] < backSlots[j]))
+            {
+                slot = frontSlots[i++];
+            }
+            else if (i == frontSlots.length || backSlots[j] < frontSlots[i])
+            {
+                slot = backSlots[j++];
+            }
+            else
+            {
+                slot = frontSlots[i++];
+                j++;
+            }
+
+            addIfFound(slot, text, lowerText, front, back, matchCase,
+                category, foundCards);
+            chunker.update(foundCards);
+        }
+
+        chunker.finish(foundCards);
+        return foundCards;
+    }
+
+    /**
+     * Unregisters this index from the category it observes. Needs to be called
+     * on the thread that changes the category tree.
+     */
+    public void dispose()
+    {
+        m_root.removeObserver(this);
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.CategoryObserver
+     */
+    public void onCardEvent(int type, Card card, Category category, int deck)
+    {
+        if (type == ADDED_EVENT || type == REMOVED_EVENT || type == EDITED_EVENT)
+        {
+            synchronized (m_changes)
+            {
+                m_changes.add(new Change(card, type == REMOVED_EVENT));
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.CategoryObserver
+     */
+    public void onCategoryEvent(int type, Category category)
+    {
+        // cards that come and go with their category don't fire card events
+        if (type == ADDED_EVENT || type == REMOVED_EVENT)
+            addChanges(category, type == REMOVED_EVENT);
+    }
+
+    /**
+     * Queues a change for every card of given category and its child
+     * categories.
+     */
+    private void addChanges(Category category, boolean removed)
+    {
+        List<Change> changes = new ArrayList<Change>();
+        for (Card card : category.getCardView())
+        {
+            changes.add(new Change(card, removed));
+        }
+
+        synchronized (m_changes)
+        {
+            m_changes.addAll(changes);
+        }
+    }
+
+    /**
+     * Works all queued changes into the index.
+     */
+    private void applyChanges()
+    {
+        List<Change> changes;
+        synchronized (m_changes)
+        {
+            if (m_changes.isEmpty())
+                return;
+
+            changes = m_changes;
+            m_changes = new ArrayList<Change>();
+        }
+
+        for (Change change : changes)
+        {
+            removeCard(change.m_card);
+
+            if (change.m_texts != null)
+                addCard(change.m_card, change.m_texts);
+        }
+    }
+
+    /**
+     * @param texts the unformatted texts of the front and back side.
+     */
+    private void addCard(Card card, String[] texts)
+    {
+        int slot = m_cards.size();
+
+        // the lower case texts are followed by the texts themselves
+        String[] slotTexts = {texts[FRONT].toLowerCase(), 
+            texts[BACK].toLowerCase(), texts[FRONT], texts[BACK]};
+
+        m_cards.add(card);
+        m_texts.add(slotTexts);
+        m_slots.put(card, new Integer(slot));
+
+        for (int side = FRONT; side <= BACK; side++)
+        {
+            String text = slotTexts[side];
+            Map<Long, Postings> postings = m_postings.get(side);
+
+            for (int i = 0; i + GRAM_LENGTH <= text.length(); i++)
+            {
+                Long gram = new Long(gram(text, i));
+
+                Postings slots = postings.get(gram);
+                if (slots == null)
+                {
+                    slots = new Postings();
+                    postings.put(gram, slots);
+                }
+
+                slots.add(slot);
+            }
+        }
+    }
+
+    private void removeCard(Card card)
+    {
+        Integer slot = m_slots.remove(card);
+        if (slot == null)
+            return;
+
+        m_cards.set(slot.intValue(), null);
+        m_texts.set(slot.intValue(), null);
+        m_deadSlots++;
+
+        if (m_deadSlots > MIN_COMPACTION && m_deadSlots > m_slots.size())
+        {
+            compact();
+        }
+    }
+
+    /**
+     * Rebuilds the index from scratch to get rid of dead slots.
+     */
+    private void compact()
+    {
+        List<Card> cards = new ArrayList<Card>(m_slots.size());
+        List<String[]> texts = new ArrayList<String[]>(m_slots.size());
+        for (int slot = 0; slot < m_cards.size(); slot++)
+        {
+            if (m_cards.get(slot) != null)
+            {
+                cards.add(m_cards.get(slot));
+                texts.add(m_texts.get(slot));
+            }
+        }
+
+        m_cards.clear();
+        m_texts.clear();
+        m_slots.clear();
+        m_postings.get(FRONT).clear();
+        m_postings.get(BACK).clear();
+        m_deadSlots = 0;
+
+        for (int i = 0; i < cards.size(); i++)
+        {
+            String[] slotTexts = texts.get(i);
+            addCard(cards.get(i), new String[] {
+                slotTexts[FRONT + 2], slotTexts[BACK + 2]});
+        }
+    }
+
+    /**
+     * @return the sorted slots that contain all grams of given lower case
+     * text on given side.
+     */
+    private int[] findCandidates(int side, String lowerText)
+    {
+        Map<Long, Postings> postings = m_postings.get(side);
+
+        int[] candidates = null;
+        int size = 0;
+
+        for (int i = 0; i + GRAM_LENGTH <= lowerText.length(); i++)
+        {
+            Postings slots = postings.get(new Long(gram(lowerText, i)));
+            if (slots == null)
+                return new int[0];
+
+            if (candidates == null)
+            {
+                candidates = new int[slots.m_size];
+                System.arraycopy(slots.m_slots, 0, candidates, 0, slots.m_size);
+                size = slots.m_size;
+                continue;
+            }
+
+            // intersect in place
+            int k = 0, j = 0, newSize = 0;
+            while (k < size && j < slots.m_size)
+            {
+                if (candidates[k] < slots.m_slots[j])
+                {
+                    k++;
+                }
+                else if (candidates[k] > slots.m_slots[j])
+                {
+                    j++;
+                }
+                else
+                {
+                    candidates[newSize++] = candidates[k];
+                    k++;
+                    j++;
+                }
+            }
+
+            size = newSize;
+            if (size == 0)
+                return new int[0];
+        }
+
+        int[] result = new int[size];
+        System.arraycopy(candidates, 0, result, 0, size);
+        return result;
+    }
+
+    private void addIfFound(int slot, String text, String lowerText,
+        boolean front, boolean back, boolean matchCase, Category category,
+        List<Card> foundCards)
+    {
+        Card card = m_cards.get(slot);
+        if (card == null || !isInCategory(card, category))
+            return;
+
+        String[] texts = m_texts.get(slot);
+
+        if (front && contains(texts, FRONT, text, lowerText, matchCase))
+        {
+            foundCards.add(card);
+        }
+        else if (back && contains(texts, BACK, text, lowerText, matchCase))
+        {
+            foundCards.add(card);
+        }
+    }
+
+    private boolean contains(String[] texts, int side, String text, 
+        String lowerText, boolean matchCase)
+    {
+        return matchCase ?
+            texts[side + 2].indexOf(text) > -1 :
+            texts[side].indexOf(lowerText) > -1;
+    }
+
+    private boolean isInCategory(Card card, Category category)
+    {
+        if (category == null || category == m_root)
+            return true;
+
+        for (Category cat = card.getCategory(); cat != null; cat = cat.getParent())
+        {
+            if (cat == category)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the gram starting at given position packed into a long value.
+     */
+    private static long gram(String text, int pos)
+    {
+        long gram = 0;
+        for (int i = pos; i < pos + GRAM_LENGTH; i++)
+        {
+            gram = (gram << 16) | text.charAt(i);
+        }
+
+        return gram;
+    }
+}
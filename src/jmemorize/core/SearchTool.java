@@ -19,6 +19,7 @@
 package jmemorize.core;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -31,9 +32,15 @@ public class SearchTool
     public final static int FLIP_SIDE  = 1;
     public final static int BOTH_SIDES = 2;
     
-    public static List<Card> search(String text, int side, boolean matchCase, List<Card> cards)
+    public static List<Card> search(String text, int side, boolean matchCase, 
+        Collection<Card> cards)
     {
         List<Card> foundCards = new LinkedList<Card>();
+        if (!matchCase)
+        {
+            text = text.toLowerCase();
+        }
+        
         for (Card card : cards)
         {
             String frontSide = card.getFrontSide().getText().getUnformatted();
@@ -41,7 +48,6 @@ public class SearchTool
             
             if (!matchCase)
             {
-                text      = text.toLowerCase();
                 frontSide = frontSide.toLowerCase();
                 flipSide  = flipSide.toLowerCase();
             }
@@ -91,6 +91,7 @@ public class Settings
     private static final String SCHEDULE_FIXED_EXPIRATION_ENABLED = "schedule.fixed-expiration.enabled"; //$NON-NLS-1$
     private static final String SCHEDULE_FIXED_EXPIRATION_HOUR = "schedule.fixed-expiration.hour"; //$NON-NLS-1$
     private static final String SCHEDULE_FIXED_EXPIRATION_MINUTE = "schedule.fixed-expiration.minute";  //$NON-NLS-1$
+    private static final String SCHEDULE_ADAPTIVE = "schedule.adaptive"; //$NON-NLS-1$
     
     private static final String SIDES = "sides";                 //$NON-NLS-1$
     private static final String SIDES_FRONT_AMOUNT = "sides-front-amount"; //$NON-NLS-1$
@@ -107,6 +108,9 @@ public class Settings
     // etc keys
     private static final String LAST_DIRECTORY = "last-directory"; //$NON-NLS-1$
     private static final String SAVE_COMPRESSED = "gzip";          //$NON-NLS-1$
+    private static final String STREAMING_LOAD = "streaming-load"; //$NON-NLS-1$
+    private static final String SAVE_SNAPSHOT = "save-snapshot";   //$NON-NLS-1$
+    private static final String IMAGE_CACHE_SIZE = "image-cache.size"; //$NON-NLS-1$
     private static final String CATEGORY_TREE_WIDTH = "category-tree.width"; //$NON-NLS-1$
     private static final String CATEGORY_TREE_VISIBLE = "category-tree.visible"; //$NON-NLS-1$
     private static final String MAIN_DIVIDER_LOCATION = "main-divider.location"; //$NON-NLS-1$
@@ -223,6 +227,8 @@ public class Settings
         PREFS.putInt(SCHEDULE_FIXED_EXPIRATION_HOUR, strategy.getFixedExpirationHour());
         PREFS.putInt(SCHEDULE_FIXED_EXPIRATION_MINUTE, strategy.getFixedExpirationMinute());
         
+        PREFS.putBoolean(SCHEDULE_ADAPTIVE, strategy.isAdaptiveSchedulingEnabled());
+        
         PREFS.putBoolean(GROUP_BY_CATEGORY, strategy.isGroupByCategory());
         PREFS.putInt(CATEGORY_ORDER, strategy.getCategoryOrder());
     }
@@ -267,6 +273,8 @@ public class Settings
         int minute = PREFS.getInt(SCHEDULE_FIXED_EXPIRATION_MINUTE, 0);
         settings.setFixedExpirationTime(hour, minute);
         
+        settings.setAdaptiveSchedulingEnabled(PREFS.getBoolean(SCHEDULE_ADAPTIVE, false));
+        
         settings.setGroupByCategory(PREFS.getBoolean(GROUP_BY_CATEGORY, true));
         settings.setCategoryOrder(PREFS.getInt(CATEGORY_ORDER, 
             LearnSettings.CATEGORY_ORDER_FIXED));
@@ -288,6 +296,47 @@ public class Settings
     {
         return PREFS.getBoolean(SAVE_COMPRESSED, true);
     }
+    
+    /**
+     * @return <code>true</code> if lesson files should be loaded with the
+     * streaming XML parser instead of building a DOM tree first.
+     */
+    public static boolean loadIsStreamingLoad()
+    {
+        return PREFS.getBoolean(STREAMING_LOAD, true);
+    }
+    
+    public static void storeSaveSnapshot(boolean saveSnapshot)
+    {
+        PREFS.putBoolean(SAVE_SNAPSHOT, saveSnapshot);
+    }
+    
+    /**
+     * @return <code>true</code> if a binary snapshot should be written next
+     * to lesson files when saving, so that they can be opened faster.
+     */
+    public static boolean loadIsSaveSnapshot()
+    {
+        return PREFS.getBoolean(SAVE_SNAPSHOT, false);
+    }
+    
+    /**
+     * @param megabytes the memory that decoded images and their scaled copies
+     * may use together in the image caches.
+     */
+    public static void storeImageCacheSize(int megabytes)
+    {
+        PREFS.putInt(IMAGE_CACHE_SIZE, megabytes);
+    }
+    
+    /**
+     * @return the memory in megabytes that decoded images and their scaled
+     * copies may use together in the image caches.
+     */
+    public static int loadImageCacheSize()
+    {
+        return PREFS.getInt(IMAGE_CACHE_SIZE, 32);
+    }
 
     //merged storeCategoryTreeWidth with storeCategoryTreeVisible
     public static void storeCategoryTreeWidth(int width)
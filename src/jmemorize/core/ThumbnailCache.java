@@ -0,0 +1,162 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+import jmemorize.core.ImageRepository.ImageItem;
+import jmemorize.util.ImageScaler;
+
+/**
+ * Small copies of images that are stored as PNG files in a directory. The
+ * files are named after the digest of the image content, so that a
+ * thumbnail can be reused for the same image in all lessons and is never
+ * out of date. When the files get larger than the size limit, the oldest 
+ * thumbnails are deleted.
+ */
+public class ThumbnailCache
+{
+    public static final int    SIZE   = 128;
+
+    private static final String FORMAT = "png"; //$NON-NLS-1$
+
+    private File               m_dir;
+    private long               m_maxBytes;
+
+    /**
+     * @param dir the directory of the thumbnail files. It is created when
+     * the first thumbnail is written.
+     * @param maxBytes the maximum number of bytes of all thumbnail files.
+     */
+    public ThumbnailCache(File dir, long maxBytes)
+    {
+        m_dir = dir;
+        m_maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the thumbnail file of given image. The file might not exist yet.
+     */
+    public File getFile(ImageItem item) throws IOException
+    {
+        return new File(m_dir, toHex(item.getDigest()) + "-" + SIZE + //$NON-NLS-1$
+            "." + FORMAT); //$NON-NLS-1$
+    }
+
+    /**
+     * @return the thumbnail file of given image. The thumbnail is created if
+     * it doesn't exist yet. This reads and scales the image, so it should
+     * not be called on the event dispatch thread.
+     */
+    public File getThumbnail(ImageItem item) throws IOException
+    {
+        File file = getFile(item);
+        if (file.isFile())
+            return file;
+
+        ImageIcon icon = item.getImage();
+        if (icon == null || icon.getIconWidth() <= 0)
+            throw new IOException("could not decode image " + item.getId()); //$NON-NLS-1$
+
+        m_dir.mkdirs();
+
+        // write to a temporary file first, so that no other thread or
+        // program instance ever reads a partly written thumbnail
+        File tmpFile = File.createTempFile("thumb", ".tmp", m_dir); //$NON-NLS-1$ //$NON-NLS-2$
+        try
+        {
+            ImageIO.write(ImageScaler.scaleToFit(icon.getImage(), SIZE, SIZE),
+                FORMAT, tmpFile);
+
+            if (!tmpFile.renameTo(file) && !file.isFile())
+                throw new IOException("could not write thumbnail " + file); //$NON-NLS-1$
+        }
+        finally
+        {
+            tmpFile.delete();
+        }
+
+        prune(file);
+        return file;
+    }
+
+    /**
+     * Deletes the oldest thumbnails if all thumbnails together are larger
+     * than the size limit. As many are deleted that a quarter of the limit
+     * is free again, so that this isn't needed for every new thumbnail.
+     * 
+     * @param keepFile the thumbnail that must not be deleted.
+     */
+    private void prune(File keepFile)
+    {
+        File[] files = m_dir.listFiles(new FileFilter() {
+            public boolean accept(File file)
+            {
+                return file.getName().endsWith("-" + SIZE + "." + FORMAT); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        });
+        
+        if (files == null)
+            return;
+        
+        long bytes = 0;
+        for (File file : files)
+        {
+            bytes += file.length();
+        }
+        
+        if (bytes <= m_maxBytes)
+            return;
+        
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File file0, File file1)
+            {
+                long modified0 = file0.lastModified();
+                long modified1 = file1.lastModified();
+                return modified0 < modified1 ? -1 : (modified0 > modified1 ? 1 : 0);
+            }
+        });
+        
+        for (int i = 0; i < files.length && bytes > m_maxBytes * 3 / 4; i++)
+        {
+            long length = files[i].length();
+            if (!files[i].equals(keepFile) && files[i].delete())
+                bytes -= length;
+        }
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuffer buf = new StringBuffer(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++)
+        {
+            buf.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+            buf.append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+
+        return buf.toString();
+    }
+}
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -71,7 +72,7 @@ public class CsvBuilder
             CsvWriter writer = new CsvWriter(out, delimiter, charset);
             writeHeader(writer);
             
-            List<Card> cards = lesson.getRootCategory().getCards();
+            Collection<Card> cards = lesson.getRootCategory().getCardView();
             for (Card card : cards)
             {
                 writer.write(card.getFrontSide().getText().getFormatted());
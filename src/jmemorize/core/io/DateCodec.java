@@ -0,0 +1,261 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats and parses the dates of lesson files. All methods are thread-safe
+ * and don't use any shared {@link DateFormat}.
+ *
+ * New files are written in UTC with the ISO-8601 format
+ * <code>2008-01-31T18:05:00.000Z</code>. Plain epoch milliseconds are read
+ * as well. Older files used the medium UK date format of the default time
+ * zone (e.g. <code>31-Jan-2008 19:05:00</code>), which is still read without
+ * a DateFormat. Any other format that the old DateFormat wrote is handed to
+ * a per thread DateFormat as last resort.
+ */
+public final class DateCodec
+{
+    private static final long   MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+    private static final String[] MONTHS = {
+        "jan", "feb", "mar", "apr", "may", "jun",  //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+        "jul", "aug", "sep", "oct", "nov", "dec"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+
+    private static final ThreadLocal<DateFormat> LEGACY_FORMAT =
+        new ThreadLocal<DateFormat>() {
+            protected DateFormat initialValue()
+            {
+                return DateFormat.getDateTimeInstance(
+                    DateFormat.MEDIUM, DateFormat.MEDIUM, Locale.UK);
+            }
+        };
+
+    private DateCodec()
+    {
+    }
+
+    /**
+     * @return the given date in the ISO-8601 format in UTC.
+     */
+    public static String format(Date date)
+    {
+        long time = date.getTime();
+        long days = floorDiv(time, MILLIS_PER_DAY);
+        int millisOfDay = (int)(time - days * MILLIS_PER_DAY);
+
+        // civil date from days since epoch (see H. Hinnant, chrono-compatible
+        // low-level date algorithms)
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        int doe = (int)(z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuffer buf = new StringBuffer(24);
+        append(buf, year, 4).append('-');
+        append(buf, month, 2).append('-');
+        append(buf, day, 2).append('T');
+        append(buf, millisOfDay / 3600000, 2).append(':');
+        append(buf, millisOfDay / 60000 % 60, 2).append(':');
+        append(buf, millisOfDay / 1000 % 60, 2).append('.');
+        append(buf, millisOfDay % 1000, 3).append('Z');
+
+        return buf.toString();
+    }
+
+    /**
+     * Parses a date of any format that was ever written to lesson files.
+     */
+    public static Date parse(String text) throws ParseException
+    {
+        long time;
+
+        if (isDigits(text, 0, text.length()))
+        {
+            time = Long.parseLong(text);
+        }
+        else if ((time = parseIso(text)) == Long.MIN_VALUE &&
+            (time = parseLegacy(text)) == Long.MIN_VALUE)
+        {
+            return LEGACY_FORMAT.get().parse(text);
+        }
+
+        return new Date(time);
+    }
+
+    /**
+     * @return the time in milliseconds or Long.MIN_VALUE if given text isn't
+     * of the form <code>yyyy-MM-ddTHH:mm:ss[.SSS]Z</code>.
+     */
+    private static long parseIso(String text)
+    {
+        int len = text.length();
+        if ((len != 20 && len != 24) || text.charAt(len - 1) != 'Z' ||
+            text.charAt(4) != '-' || text.charAt(7) != '-' ||
+            text.charAt(10) != 'T' || text.charAt(13) != ':' ||
+            text.charAt(16) != ':')
+        {
+            return Long.MIN_VALUE;
+        }
+
+        int millis = 0;
+        if (len == 24)
+        {
+            if (text.charAt(19) != '.' || !isDigits(text, 20, 23))
+                return Long.MIN_VALUE;
+
+            millis = toInt(text, 20, 23);
+        }
+
+        if (!isDigits(text, 0, 4) || !isDigits(text, 5, 7) ||
+            !isDigits(text, 8, 10) || !isDigits(text, 11, 13) ||
+            !isDigits(text, 14, 16) || !isDigits(text, 17, 19))
+        {
+            return Long.MIN_VALUE;
+        }
+
+        long days = toDays(toInt(text, 0, 4), toInt(text, 5, 7), toInt(text, 8, 10));
+        return days * MILLIS_PER_DAY + toMillis(toInt(text, 11, 13),
+            toInt(text, 14, 16), toInt(text, 17, 19)) + millis;
+    }
+
+    /**
+     * @return the time in milliseconds or Long.MIN_VALUE if given text isn't
+     * of the form <code>dd-MMM-yyyy HH:mm:ss</code> in the default time zone.
+     */
+    private static long parseLegacy(String text)
+    {
+        int len = text.length();
+        int dash = text.indexOf('-');
+        if (dash < 1 || dash > 2 || len != dash + 18 ||
+            text.charAt(dash + 4) != '-' || text.charAt(dash + 9) != ' ' ||
+            text.charAt(dash + 12) != ':' || text.charAt(dash + 15) != ':')
+        {
+            return Long.MIN_VALUE;
+        }
+
+        int month = toMonth(text, dash + 1);
+        int year = dash + 5;
+        int hour = dash + 10;
+        if (month < 0 || !isDigits(text, 0, dash) ||
+            !isDigits(text, year, year + 4) || !isDigits(text, hour, hour + 2) ||
+            !isDigits(text, hour + 3, hour + 5) || !isDigits(text, hour + 6, hour + 8))
+        {
+            return Long.MIN_VALUE;
+        }
+
+        long local = toDays(toInt(text, year, year + 4), month, toInt(text, 0, dash)) *
+            MILLIS_PER_DAY + toMillis(toInt(text, hour, hour + 2),
+            toInt(text, hour + 3, hour + 5), toInt(text, hour + 6, hour + 8));
+
+        // the offset depends on the point in time, so it is looked up twice
+        // to get it right around daylight saving time changes
+        TimeZone zone = TimeZone.getDefault();
+        long guess = local - zone.getOffset(local);
+        return local - zone.getOffset(guess);
+    }
+
+    /**
+     * @return the month (1-12) whose english abbreviation starts at given
+     * position or -1.
+     */
+    private static int toMonth(String text, int pos)
+    {
+        for (int i = 0; i < MONTHS.length; i++)
+        {
+            if (text.regionMatches(true, pos, MONTHS[i], 0, 3))
+                return i + 1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the days since 1970-01-01 of given date (see H. Hinnant,
+     * chrono-compatible low-level date algorithms).
+     */
+    private static long toDays(int year, int month, int day)
+    {
+        year -= month <= 2 ? 1 : 0;
+        long era = floorDiv(year, 400);
+        int yoe = (int)(year - era * 400);
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+
+        return era * 146097 + doe - 719468;
+    }
+
+    private static long toMillis(int hours, int minutes, int seconds)
+    {
+        return ((hours * 60L + minutes) * 60 + seconds) * 1000;
+    }
+
+    private static boolean isDigits(String text, int start, int end)
+    {
+        if (start >= end)
+            return false;
+
+        for (int i = start; i < end; i++)
+        {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+
+        return true;
+    }
+
+    private static int toInt(String text, int start, int end)
+    {
+        int value = 0;
+        for (int i = start; i < end; i++)
+        {
+            value = value * 10 + text.charAt(i) - '0';
+        }
+
+        return value;
+    }
+
+    private static StringBuffer append(StringBuffer buf, long value, int digits)
+    {
+        String num = Long.toString(value);
+        for (int i = num.length(); i < digits; i++)
+        {
+            buf.append('0');
+        }
+
+        return buf.append(num);
+    }
+
+    private static long floorDiv(long x, long y)
+    {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardSide;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.ReviewLog;
+import jmemorize.core.learn.LearnHistory;
+import jmemorize.core.learn.LearnHistory.SessionSummary;
+
+/**
+ * A compact binary copy of a lesson that is stored next to the lesson file.
+ * It holds the category tree, all cards and the learn history, but not the
+ * images, which are still loaded from the lesson file.
+ *
+ * The snapshot records the size and modification time of the lesson file it
+ * was written for. It is only used while the lesson file is unchanged and
+ * the snapshot is at least as new as the lesson file. Snapshots are read
+ * into memory as a whole and closed before they are parsed, so that they
+ * can be overwritten right away.
+ */
+public class LessonSnapshot
+{
+    private static final String SUFFIX   = ".snapshot"; //$NON-NLS-1$
+    private static final String ENCODING = "UTF-8";     //$NON-NLS-1$
+
+    private static final int    MAGIC    = 0x4A4D5A53; // "JMZS"
+    private static final int    VERSION  = 2;
+
+    private static final long   NO_DATE  = Long.MIN_VALUE;
+
+    private static final int    HEADER_SIZE = 24;
+
+    /**
+     * @return the snapshot file that belongs to given lesson file.
+     */
+    public static File getSnapshotFile(File lessonFile)
+    {
+        return new File(lessonFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Writes a snapshot of given lesson for the given lesson file. Needs to
+     * be called after the lesson file has been written.
+     */
+    public static void save(File lessonFile, Lesson lesson) throws IOException
+    {
+        File file = getSnapshotFile(lessonFile);
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file)));
+
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(lessonFile.length());
+            out.writeLong(lessonFile.lastModified());
+
+            writeCategory(out, lesson.getRootCategory());
+            writeLearnHistory(out, lesson.getLearnHistory());
+        }
+        catch (IOException e)
+        {
+            out.close();
+            out = null;
+            file.delete();
+            throw e;
+        }
+        finally
+        {
+            if (out != null)
+                out.close();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if there is a snapshot for the given lesson
+     * file that was written for its current content.
+     */
+    public static boolean isUpToDate(File lessonFile)
+    {
+        File file = getSnapshotFile(lessonFile);
+        if (!file.isFile() || file.lastModified() < lessonFile.lastModified())
+            return false;
+
+        try
+        {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try
+            {
+                byte[] header = new byte[HEADER_SIZE];
+                in.readFully(header);
+                
+                return readHeader(ByteBuffer.wrap(header), lessonFile);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Loads the snapshot of given lesson file into given lesson. The images
+     * are not loaded.
+     *
+     * @throws IOException if the snapshot is missing, out of date or
+     * corrupted. The lesson might be partly filled in that case.
+     */
+    public static void load(File lessonFile, Lesson lesson) throws IOException
+    {
+        ByteBuffer buf = read(getSnapshotFile(lessonFile));
+
+        if (!readHeader(buf, lessonFile))
+            throw new IOException("Snapshot is out of date."); //$NON-NLS-1$
+
+        try
+        {
+            readString(buf); // the name of the root category isn't loaded
+            readCategory(buf, lesson.getRootCategory());
+            readLearnHistory(buf, lesson.getLearnHistory());
+        }
+        catch (RuntimeException e)
+        {
+            // a truncated buffer or corrupted values that the lesson rejects
+            IOException ex = new IOException("Snapshot is corrupted."); //$NON-NLS-1$
+            ex.initCause(e);
+            throw ex;
+        }
+    }
+
+    /**
+     * @return a heap buffer with the whole content of given file.
+     */
+    private static ByteBuffer read(File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            long length = file.length();
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("Snapshot is too large."); //$NON-NLS-1$
+            
+            byte[] bytes = new byte[(int)length];
+            in.readFully(bytes);
+            
+            return ByteBuffer.wrap(bytes);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static boolean readHeader(ByteBuffer buf, File lessonFile)
+    {
+        return buf.remaining() >= HEADER_SIZE &&
+            buf.getInt() == MAGIC && buf.getInt() == VERSION &&
+            buf.getLong() == lessonFile.length() &&
+            buf.getLong() == lessonFile.lastModified();
+    }
+
+    private static void writeCategory(DataOutputStream out, Category category)
+        throws IOException
+    {
+        writeString(out, category.getName());
+
+        out.writeInt(category.getNumberOfDecks());
+        for (int i = 0; i < category.getNumberOfDecks(); i++)
+        {
+            List<Card> cards = category.getLocalCards(i);
+
+            out.writeInt(cards.size());
+            for (Card card : cards)
+            {
+                writeCard(out, card);
+            }
+        }
+
+        List<Category> children = category.getChildCategories();
+        out.writeInt(children.size());
+        for (Category child : children)
+        {
+            writeCategory(out, child);
+        }
+    }
+
+    /**
+     * Reads the cards and child categories of given category.
+     */
+    private static void readCategory(ByteBuffer buf, Category category)
+        throws IOException
+    {
+        readCards(buf, category);
+
+        int children = buf.getInt();
+        for (int i = 0; i < children; i++)
+        {
+            Category child = new Category(readString(buf));
+            readCategory(buf, child);
+            category.addCategoryChild(child);
+        }
+    }
+
+    private static void readCards(ByteBuffer buf, Category category)
+        throws IOException
+    {
+        int decks = buf.getInt();
+        for (int level = 0; level < decks; level++)
+        {
+            int cards = buf.getInt();
+            for (int i = 0; i < cards; i++)
+            {
+                category.addCard(readCard(buf), level);
+            }
+        }
+    }
+
+    private static void writeCard(DataOutputStream out, Card card)
+        throws IOException
+    {
+        writeString(out, card.getFrontSide().getText().getFormatted());
+        writeString(out, card.getBackSide().getText().getFormatted());
+
+        writeDate(out, card.getDateCreated());
+        writeDate(out, card.getDateModified());
+        writeDate(out, card.getDateTouched());
+        writeDate(out, card.getDateTested());
+        writeDate(out, card.getDateExpired());
+
+        out.writeInt(card.getLearnedAmount(true));
+        out.writeInt(card.getLearnedAmount(false));
+        out.writeInt(card.getTestsTotal());
+        out.writeInt(card.getTestsPassed());
+
+        writeImages(out, card.getFrontSide());
+        writeImages(out, card.getBackSide());
+
+        writeReviewLog(out, card.getReviewLog());
+    }
+
+    private static Card readCard(ByteBuffer buf) throws IOException
+    {
+        String frontSide = readString(buf);
+        String backSide = readString(buf);
+
+        Date dateCreated  = readDate(buf);
+        Date dateModified = readDate(buf);
+        Date dateTouched  = readDate(buf);
+        Date dateTested   = readDate(buf);
+        Date dateExpired  = readDate(buf);
+
+        Card card = new Card(dateCreated, frontSide, backSide);
+        if (dateModified != null)
+            card.setDateModified(dateModified);
+
+        card.setDateTested(dateTested);
+        card.setDateExpired(dateExpired);
+        card.setDateTouched(dateTouched);
+
+        card.setLearnedAmount(true, buf.getInt());
+        card.setLearnedAmount(false, buf.getInt());
+
+        int testsTotal = buf.getInt();
+        int testsHit = buf.getInt();
+        card.incStats(testsHit, testsTotal);
+
+        card.getFrontSide().setImages(readImages(buf));
+        card.getBackSide().setImages(readImages(buf));
+
+        card.setReviewLog(readReviewLog(buf));
+
+        return card;
+    }
+
+    private static void writeImages(DataOutputStream out, CardSide side)
+        throws IOException
+    {
+        List<String> imgIDs = side.getImages();
+
+        out.writeInt(imgIDs.size());
+        for (String id : imgIDs)
+        {
+            writeString(out, id);
+        }
+    }
+
+    private static List<String> readImages(ByteBuffer buf) throws IOException
+    {
+        int size = buf.getInt();
+        
+        // every ID takes at least the four bytes of its length
+        if (size < 0 || size > buf.remaining() / 4)
+            throw new IOException("Snapshot is corrupted."); //$NON-NLS-1$
+
+        List<String> imgIDs = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++)
+        {
+            imgIDs.add(readString(buf));
+        }
+
+        return imgIDs;
+    }
+
+    private static void writeReviewLog(DataOutputStream out, ReviewLog log)
+        throws IOException
+    {
+        if (log == null || log.isEmpty())
+        {
+            out.writeInt(0);
+            return;
+        }
+
+        byte[] bytes = log.toByteArray();
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static ReviewLog readReviewLog(ByteBuffer buf) throws IOException
+    {
+        int length = buf.getInt();
+        if (length == 0)
+            return null;
+
+        if (length < 0 || length > buf.remaining())
+            throw new IOException("Snapshot is corrupted."); //$NON-NLS-1$
+
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+
+        try
+        {
+            return ReviewLog.fromByteArray(bytes);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("Snapshot is corrupted."); //$NON-NLS-1$
+        }
+    }
+
+    private static void writeLearnHistory(DataOutputStream out,
+        LearnHistory history) throws IOException
+    {
+        List<SessionSummary> summaries = history.getSummaries();
+
+        out.writeInt(summaries.size());
+        for (SessionSummary summary : summaries)
+        {
+            writeDate(out, summary.getStart());
+            writeDate(out, summary.getEnd());
+
+            out.writeInt((int)summary.getPassed());
+            out.writeInt((int)summary.getFailed());
+            out.writeInt((int)summary.getSkipped());
+            out.writeInt((int)summary.getRelearned());
+        }
+    }
+
+    private static void readLearnHistory(ByteBuffer buf, LearnHistory history)
+    {
+        int size = buf.getInt();
+        for (int i = 0; i < size; i++)
+        {
+            Date start = readDate(buf);
+            Date end = readDate(buf);
+
+            int passed = buf.getInt();
+            int failed = buf.getInt();
+            int skipped = buf.getInt();
+            int relearned = buf.getInt();
+
+            history.addSummary(start, end, passed, failed, skipped, relearned);
+        }
+
+        history.setIsLoaded(true);
+    }
+
+    private static void writeDate(DataOutputStream out, Date date)
+        throws IOException
+    {
+        out.writeLong(date != null ? date.getTime() : NO_DATE);
+    }
+
+    private static Date readDate(ByteBuffer buf)
+    {
+        long time = buf.getLong();
+        return time != NO_DATE ? new Date(time) : null;
+    }
+
+    private static void writeString(DataOutputStream out, String text)
+        throws IOException
+    {
+        byte[] bytes = text.getBytes(ENCODING);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) throws IOException
+    {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining())
+            throw new IOException("Snapshot is corrupted."); //$NON-NLS-1$
+
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+
+        return new String(bytes, ENCODING);
+    }
+}
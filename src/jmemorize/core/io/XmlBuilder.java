@@ -18,6 +18,7 @@
  */
 package jmemorize.core.io;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -25,28 +26,26 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.text.DateFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.CRC32;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import jmemorize.core.Card;
 import jmemorize.core.CardSide;
@@ -55,6 +54,7 @@ import jmemorize.core.ImageRepository;
 import jmemorize.core.Lesson;
 import jmemorize.core.LessonProvider;
 import jmemorize.core.Main;
+import jmemorize.core.ReviewLog;
 import jmemorize.core.Settings;
 import jmemorize.core.ImageRepository.ImageItem;
 import jmemorize.core.learn.LearnHistory;
@@ -72,49 +72,48 @@ import org.xml.sax.SAXException;
  */
 public class XmlBuilder
 {
-    private static final String SESSION              = "session";            //$NON-NLS-1$
-    private static final String LESSON               = "Lesson";             //$NON-NLS-1$
-    private static final String DECK                 = "Deck";               //$NON-NLS-1$
-    private static final String CARD                 = "Card";               //$NON-NLS-1$
-    private static final String SIDE                 = "Side";               //$NON-NLS-1$
-    private static final String IMG                  = "image";              //$NON-NLS-1$
-    private static final String IMG_ID               = "id";                 //$NON-NLS-1$
-    private static final String NAME                 = "name";               //$NON-NLS-1$
-    private static final String CATEGORY             = "Category";           //$NON-NLS-1$
-    private static final String TESTS_HIT            = "TestsHit";           //$NON-NLS-1$
-    private static final String TESTS_TOTAL          = "TestsTotal";         //$NON-NLS-1$
-    private static final String AMOUNT_LEARNED_BACK  = "AmountLearnedBack";  //$NON-NLS-1$
-    private static final String AMOUNT_LEARNED_FRONT = "AmountLearnedFront"; //$NON-NLS-1$
-    private static final String DATE_EXPIRED         = "DateExpired";        //$NON-NLS-1$
-    private static final String DATE_TESTED          = "DateTested";         //$NON-NLS-1$
-    private static final String DATE_TOUCHED         = "DateTouched";        //$NON-NLS-1$
-    private static final String DATE_CREATED         = "DateCreated";        //$NON-NLS-1$
-    private static final String DATE_MODIFIED        = "DateModified";       //$NON-NLS-1$
-    private static final String BACKSIDE             = "Backside";           //$NON-NLS-1$
-    private static final String FRONTSIDE            = "Frontside";          //$NON-NLS-1$
+    static final String SESSION                      = "session";            //$NON-NLS-1$
+    static final String LESSON                       = "Lesson";             //$NON-NLS-1$
+    static final String DECK                         = "Deck";               //$NON-NLS-1$
+    static final String CARD                         = "Card";               //$NON-NLS-1$
+    static final String SIDE                         = "Side";               //$NON-NLS-1$
+    static final String IMG                          = "image";              //$NON-NLS-1$
+    static final String IMG_ID                       = "id";                 //$NON-NLS-1$
+    static final String NAME                         = "name";               //$NON-NLS-1$
+    static final String CATEGORY                     = "Category";           //$NON-NLS-1$
+    static final String TESTS_HIT                    = "TestsHit";           //$NON-NLS-1$
+    static final String TESTS_TOTAL                  = "TestsTotal";         //$NON-NLS-1$
+    static final String AMOUNT_LEARNED_BACK          = "AmountLearnedBack";  //$NON-NLS-1$
+    static final String AMOUNT_LEARNED_FRONT         = "AmountLearnedFront"; //$NON-NLS-1$
+    static final String DATE_EXPIRED                 = "DateExpired";        //$NON-NLS-1$
+    static final String DATE_TESTED                  = "DateTested";         //$NON-NLS-1$
+    static final String DATE_TOUCHED                 = "DateTouched";        //$NON-NLS-1$
+    static final String DATE_CREATED                 = "DateCreated";        //$NON-NLS-1$
+    static final String DATE_MODIFIED                = "DateModified";       //$NON-NLS-1$
+    static final String BACKSIDE                     = "Backside";           //$NON-NLS-1$
+    static final String REVIEWS                      = "Reviews";            //$NON-NLS-1$
+    static final String FRONTSIDE                    = "Frontside";          //$NON-NLS-1$
     
-    private static final String STATS_ROOT           = "statistics";         //$NON-NLS-1$
-    private static final String STATS_RELEARNED      = "relearned";          //$NON-NLS-1$
-    private static final String STATS_SKIPPED        = "skipped";            //$NON-NLS-1$
-    private static final String STATS_FAILED         = "failed";             //$NON-NLS-1$
-    private static final String STATS_PASSED         = "passed";             //$NON-NLS-1$
-    private static final String STATS_END            = "end";                //$NON-NLS-1$
-    private static final String STATS_START          = "start";              //$NON-NLS-1$
+    static final String STATS_ROOT                   = "statistics";         //$NON-NLS-1$
+    static final String STATS_RELEARNED              = "relearned";          //$NON-NLS-1$
+    static final String STATS_SKIPPED                = "skipped";            //$NON-NLS-1$
+    static final String STATS_FAILED                 = "failed";             //$NON-NLS-1$
+    static final String STATS_PASSED                 = "passed";             //$NON-NLS-1$
+    static final String STATS_END                    = "end";                //$NON-NLS-1$
+    static final String STATS_START                  = "start";              //$NON-NLS-1$
     
-    private static final String LESSON_ZIP_ENTRY_NAME = "lesson.xml";        //$NON-NLS-1$
-    private static final String IMAGE_FOLDER         = "images";             //$NON-NLS-1$
+    static final String LESSON_ZIP_ENTRY_NAME         = "lesson.xml";        //$NON-NLS-1$
+    static final String IMAGE_FOLDER                 = "images";             //$NON-NLS-1$
     
-    // we need a fixed formatter in file (not locale depent)
-    private final static DateFormat DATE_FORMAT = DateFormat.getDateTimeInstance(
-        DateFormat.MEDIUM, DateFormat.MEDIUM, Locale.UK);
-
-
+    private static final int BUFFER_SIZE = 64 * 1024;
     
     /**
      * Saves the lesson to an {@link OutputStream} which contains an XML
      * document.
      * 
      * Don't use this method directly. Use the {@link LessonProvider} instead.
+     * Images of zipped lessons are read from the lesson file they were loaded
+     * from while saving, so the file must not be the one that is written.
      * 
      * XML-Schema:
      * 
@@ -124,41 +123,25 @@ public class XmlBuilder
      *   </deck> ..
      * </lesson>
      */
-    public static void saveAsXMLFile(File file, Lesson lesson) throws IOException, 
-        TransformerException, ParserConfigurationException
+    public static void saveAsXMLFile(File file, Lesson lesson) throws IOException
     {   
         OutputStream out;
         ZipOutputStream zipOut = null;
         
         if (Settings.loadIsSaveCompressed())
         {
-            out = zipOut = new ZipOutputStream(new FileOutputStream(file));
+            out = zipOut = new ZipOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
             zipOut.putNextEntry(new ZipEntry(LESSON_ZIP_ENTRY_NAME));
         }
         else
         {
-            out = new FileOutputStream(file);
+            out = new BufferedOutputStream(new FileOutputStream(file));
         }
         
         try
         {
-            Document document = DocumentBuilderFactory.newInstance()
-                .newDocumentBuilder().newDocument();
-
-            // add lesson tag as root
-            Element lessonTag = document.createElement(LESSON);
-            document.appendChild(lessonTag);
-
-            // add category tags
-            writeCategory(document, lessonTag, lesson.getRootCategory());
-            writeLearnHistory(document, lesson.getLearnHistory());
-
-            // transform document for file output
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); //$NON-NLS-1$
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes"); //$NON-NLS-1$
-
-            transformer.transform(new DOMSource(document), new StreamResult(out));
+            XmlLessonWriter.write(out, lesson);
         }
         finally
         {
@@ -169,6 +152,7 @@ public class XmlBuilder
                 out.close();
         }
         
+        Map<String, String> entryNames = null;
         try
         {
             removeUnusedImagesFromRepository(lesson);
@@ -176,13 +160,17 @@ public class XmlBuilder
             if (zipOut == null)
                 writeImageRepositoryToDisk(new File(file.getParent()));
             else
-                writeImageRepositoryToZip(zipOut);
+                entryNames = writeImageRepositoryToZip(zipOut);
         }
         finally
         {
             if (zipOut != null)
                 zipOut.close();
         }
+        
+        // read the images from the new file, so that the old one can be moved
+        if (entryNames != null)
+            ImageRepository.getInstance().setZipFile(file, entryNames);
     }
 
     /**
@@ -195,6 +183,20 @@ public class XmlBuilder
      */
     public static void loadFromXMLFile(File xmlFile, Lesson lesson) 
         throws SAXException, IOException, ParserConfigurationException
+    {
+        loadFromXMLFile(xmlFile, lesson, Settings.loadIsStreamingLoad());
+    }
+    
+    /**
+     * Loads a lesson from an XML document that is contained within a file.
+     * 
+     * @param streaming <code>true</code> if the lesson should be built while
+     * the document is read by a {@link XmlLessonReader}. <code>false</code>
+     * if the whole document should be parsed into a DOM tree first.
+     */
+    public static void loadFromXMLFile(File xmlFile, Lesson lesson, 
+        boolean streaming) 
+        throws SAXException, IOException, ParserConfigurationException
     {
         InputStream in;
         ZipInputStream zipIn = null;
@@ -224,13 +226,20 @@ public class XmlBuilder
         // get lesson tag
         try
         {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            Document doc = factory.newDocumentBuilder().parse(in);
-    
-            // there must be a root category
-            Element categoryTag = (Element)doc.getElementsByTagName(CATEGORY).item(0);
-            loadCategory(lesson.getRootCategory(), null, categoryTag, 0);
-            loadLearnHistory(doc, lesson.getLearnHistory());
+            if (streaming)
+            {
+                XmlLessonReader.read(in, lesson);
+            }
+            else
+            {
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                Document doc = factory.newDocumentBuilder().parse(in);
+        
+                // there must be a root category
+                Element categoryTag = (Element)doc.getElementsByTagName(CATEGORY).item(0);
+                loadCategory(lesson.getRootCategory(), null, categoryTag, 0);
+                loadLearnHistory(doc, lesson.getLearnHistory());
+            }
         }
         finally
         {
@@ -244,15 +253,9 @@ public class XmlBuilder
                 loadImageRepositoryFromDisk(xmlFile);
             
             else
-            {
-                zipIn = new ZipInputStream(new FileInputStream(xmlFile));
-                
-                ZipEntry entry;
-                while ((entry = zipIn.getNextEntry()) != null)
-                {
-                    loadImageFromZipEntry(zipIn, entry);
-                }
-            }
+                loadImageRepositoryFromZip(xmlFile);
+            
+            replaceDuplicateImages(lesson);
         }
         catch (Exception e)
         {
@@ -265,6 +268,28 @@ public class XmlBuilder
         }
     }
     
+    /**
+     * Loads the images of given lesson file into the image repository. Zipped
+     * lesson files contain their images. For all other lesson files the
+     * images are loaded from the image folder next to the file. Cards of
+     * given lesson that refer to duplicate images are changed to refer to the
+     * images that are kept.
+     */
+    public static void loadImageRepository(File xmlFile, Lesson lesson) 
+        throws IOException
+    {
+        try
+        {
+            loadImageRepositoryFromZip(xmlFile);
+        }
+        catch (ZipException e) // expected when the file is not zipped
+        {
+            loadImageRepositoryFromDisk(xmlFile);
+        }
+        
+        replaceDuplicateImages(lesson);
+    }
+    
     /**
      * @deprecated 
      */
@@ -284,22 +309,29 @@ public class XmlBuilder
             if (child.getNodeType() != Node.ELEMENT_NODE)
                 continue;
             
-            NamedNodeMap attributes = child.getAttributes();
-
-            Date start = readDate(attributes, STATS_START); 
-            Date end = readDate(attributes, STATS_END); 
-            
-            int passed = readInt(attributes, STATS_PASSED); 
-            int failed = readInt(attributes, STATS_FAILED);
-            int skipped = readInt(attributes, STATS_SKIPPED);
-            int relearned = readInt(attributes, STATS_RELEARNED);
-            
-            history.addSummary(start, end, passed, failed, skipped, relearned);
+            loadSession(new NodeAttributes(child), history);
         }
         
         history.setIsLoaded(true);
     }
     
+    /**
+     * Adds the session summary that is described by given attributes of a
+     * session tag to the learn history.
+     */
+    static void loadSession(Attributes attributes, LearnHistory history)
+    {
+        Date start = readDate(attributes, STATS_START); 
+        Date end = readDate(attributes, STATS_END); 
+        
+        int passed = readInt(attributes, STATS_PASSED); 
+        int failed = readInt(attributes, STATS_FAILED);
+        int skipped = readInt(attributes, STATS_SKIPPED);
+        int relearned = readInt(attributes, STATS_RELEARNED);
+        
+        history.addSummary(start, end, passed, failed, skipped, relearned);
+    }
+    
     /**
      * @deprecated 
      */
@@ -311,8 +343,8 @@ public class XmlBuilder
         for (SessionSummary summary : history.getSummaries())
         {
             Element sessionTag = document.createElement(SESSION);
-            sessionTag.setAttribute(STATS_START, DATE_FORMAT.format(summary.getStart()));
-            sessionTag.setAttribute(STATS_END, DATE_FORMAT.format(summary.getEnd()));
+            sessionTag.setAttribute(STATS_START, DateCodec.format(summary.getStart()));
+            sessionTag.setAttribute(STATS_END, DateCodec.format(summary.getEnd()));
             
             sessionTag.setAttribute(STATS_PASSED, toInteger(summary.getPassed())); 
             sessionTag.setAttribute(STATS_FAILED, toInteger(summary.getFailed()));
@@ -375,99 +407,93 @@ public class XmlBuilder
         }
     }
     
-    private static void writeCategory(Document document, Element father, Category category)
+    /**
+     * Writes all images of the repository into the zip. The images are
+     * stored uncompressed, because image formats are compressed already.
+     * Images that are read from a zip file are copied over without being
+     * held in memory.
+     * 
+     * @return the names of the written zip entries by image ID.
+     */
+    private static Map<String, String> writeImageRepositoryToZip(
+        ZipOutputStream zipOut) throws IOException
     {
-        Element categoryTag = document.createElement(CATEGORY);
-        categoryTag.setAttribute(NAME, category.getName());
-        father.appendChild(categoryTag);
+        ImageRepository repository = ImageRepository.getInstance();
+        Map<String, String> entryNames = new HashMap<String, String>();
+        byte[] buffer = new byte[BUFFER_SIZE];
         
-        // for all decks add a deck tag
-        for (int i = 0; i < category.getNumberOfDecks(); i++)
+        for (ImageItem item : repository.getImageItems())
         {
-            Element deckTag = document.createElement(DECK);
-            categoryTag.appendChild(deckTag);
+            ZipEntry source = null;
+            ZipFile zipFile = null;
             
-            // for all cards add a card tag
-            for (Card card : category.getLocalCards(i))
+            if (item.getZipFile() != null)
             {
-                Element cardTag = writeCard(document, card);
-                deckTag.appendChild(cardTag);
+                zipFile = repository.getSharedZipFile(item.getZipFile());
+                source = zipFile.getEntry(item.getZipEntry());
             }
-        }
-        
-        // now add child categories
-        for (Category child : category.getChildCategories())
-        {
-            writeCategory(document, categoryTag, child);
-        }
-    }
-
-    private static Element writeCard(Document document, Card card)
-    {
-        Element cardTag = document.createElement(CARD);
-        
-        // save card sides
-        cardTag.setAttribute(FRONTSIDE, card.getFrontSide().getText().getFormatted());
-        cardTag.setAttribute(BACKSIDE, card.getBackSide().getText().getFormatted());
-        
-        // save dates
-        cardTag.setAttribute(DATE_CREATED, DATE_FORMAT.format(card.getDateCreated()));
-        cardTag.setAttribute(DATE_MODIFIED, DATE_FORMAT.format(card.getDateModified()));
-        cardTag.setAttribute(DATE_TOUCHED, DATE_FORMAT.format(card.getDateTouched()));
-        
-        if (card.getDateTested() != null)
-        {
-            cardTag.setAttribute(DATE_TESTED, DATE_FORMAT.format(card.getDateTested()));
-        }
-        if (card.getDateExpired() != null)
-        {
-            cardTag.setAttribute(DATE_EXPIRED, DATE_FORMAT.format(card.getDateExpired()));
-        }
-        
-        // save amount learned
-        cardTag.setAttribute(AMOUNT_LEARNED_FRONT, 
-            Integer.toString(card.getLearnedAmount(true)));
-        
-        cardTag.setAttribute(AMOUNT_LEARNED_BACK, 
-            Integer.toString(card.getLearnedAmount(false)));
-        
-        // save stats
-        cardTag.setAttribute(TESTS_TOTAL, Integer.toString(card.getTestsTotal()));
-        cardTag.setAttribute(TESTS_HIT, Integer.toString(card.getTestsPassed()));
-        
-        // save images
-        cardTag.appendChild(writeImages(document, card.getFrontSide()));
-        cardTag.appendChild(writeImages(document, card.getBackSide()));
-        
-        return cardTag;
-    }
-    
-    private static Element writeImages(Document doc, CardSide cardSide)
-    {
-        Element sideElement = doc.createElement(SIDE);
-        
-        for (String imgID : cardSide.getImages())
-        {
-            Element imgElement = doc.createElement(IMG);
-            imgElement.setAttribute(IMG_ID, imgID);
             
-            sideElement.appendChild(imgElement);
+            ZipEntry entry = new ZipEntry(getZipEntryName(item));
+            entry.setMethod(ZipEntry.STORED);
+            
+            if (source != null && source.getSize() >= 0 && source.getCrc() >= 0)
+            {
+                entry.setSize(source.getSize());
+                entry.setCompressedSize(source.getSize());
+                entry.setCrc(source.getCrc());
+                zipOut.putNextEntry(entry);
+                
+                InputStream in = item.openStream(zipFile);
+                try
+                {
+                    int numRead;
+                    while ((numRead = in.read(buffer)) >= 0)
+                    {
+                        zipOut.write(buffer, 0, numRead);
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            else
+            {
+                byte[] bytes = item.getBytes();
+                
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                
+                entry.setSize(bytes.length);
+                entry.setCompressedSize(bytes.length);
+                entry.setCrc(crc.getValue());
+                zipOut.putNextEntry(entry);
+                zipOut.write(bytes);
+            }
+            
+            zipOut.closeEntry();
+            entryNames.put(item.getId(), entry.getName());
         }
         
-        return sideElement;
+        return entryNames;
     }
     
-    private static void writeImageRepositoryToZip(ZipOutputStream zipOut) 
-        throws IOException
+    /**
+     * @return the name of the zip entry for given image. Images that were read
+     * from a zip entry keep its name, so that they can still be found when
+     * the lesson file that they were loaded from is overwritten.
+     */
+    private static String getZipEntryName(ImageItem item)
     {
-        ImageRepository repository = ImageRepository.getInstance();
+        String name = item.getZipEntry();
         
-        for (ImageItem item : repository.getImageItems())
+        if (name != null && name.startsWith(IMAGE_FOLDER) && 
+            name.substring(IMAGE_FOLDER.length() + 1).equals(item.getId()))
         {
-            zipOut.putNextEntry(new ZipEntry(IMAGE_FOLDER + File.separator + item.getId()));
-            zipOut.write(item.getBytes());
-            zipOut.closeEntry();            
+            return name;
         }
+        
+        return IMAGE_FOLDER + File.separator + item.getId();
     }
     
     private static void loadCategory(Category category, Category father, 
@@ -493,7 +519,10 @@ public class XmlBuilder
                     if (!childTag.getNodeName().equalsIgnoreCase(CARD))
                         continue;
                     
-                    Card card = loadCard(childTag);
+                    Card card = loadCard(new NodeAttributes(childTag));
+                    card.getFrontSide().setImages(loadImages(childTag, 0));
+                    card.getBackSide().setImages(loadImages(childTag, 1));
+                    
                     category.addCard(card, deckLevel);
                 }
                 
@@ -517,13 +546,15 @@ public class XmlBuilder
         }
     }
 
-    private static Card loadCard(Node cardTag)
+    /**
+     * Creates a card from the attributes of a card tag. The images of the card
+     * sides are not part of the attributes and need to be set by the caller.
+     */
+    static Card loadCard(Attributes attributes)
     {
-        NamedNodeMap attributes = cardTag.getAttributes();
-        
         // read front/backside
-        String frontSide = attributes.getNamedItem(FRONTSIDE).getNodeValue();
-        String backSide  = attributes.getNamedItem(BACKSIDE).getNodeValue();
+        String frontSide = attributes.getValue(FRONTSIDE);
+        String backSide  = attributes.getValue(BACKSIDE);
         
         // read dates
         Date dateCreated  = readDate(attributes, DATE_CREATED);
@@ -562,10 +593,7 @@ public class XmlBuilder
         card.setLearnedAmount(true, frontAmountLearned);
         card.setLearnedAmount(false, backAmountLearned);
         card.incStats(testsHit, testsTotal);
-        
-        // load images
-        card.getFrontSide().setImages(loadImages(cardTag, 0));
-        card.getBackSide().setImages(loadImages(cardTag, 1));
+        card.setReviewLog(readReviewLog(attributes));
         
         return card;
     }
@@ -637,24 +665,54 @@ public class XmlBuilder
         }
     }
     
-    private static void loadImageFromZipEntry(InputStream in, ZipEntry entry) 
-        throws IOException
+    /**
+     * Adds all images of given zip file to the image repository. The images
+     * are only read when they are needed.
+     */
+    private static void loadImageRepositoryFromZip(File file) throws IOException
     {
         ImageRepository repository = ImageRepository.getInstance();
+        ZipFile zipFile = repository.getSharedZipFile(file);
         
-        String name = entry.getName();
-        if (!name.startsWith(IMAGE_FOLDER))
-            return;
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements())
+        {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (!name.startsWith(IMAGE_FOLDER))
+                continue;
+            
+            repository.addImage(file, name, 
+                name.substring(IMAGE_FOLDER.length()+1), entry.getSize());
+        }
+    }
+    
+    /**
+     * Changes all cards that refer to images which were not added to the 
+     * repository because they are duplicates, to refer to the duplicated 
+     * images instead.
+     */
+    private static void replaceDuplicateImages(Lesson lesson)
+    {
+        ImageRepository repository = ImageRepository.getInstance();
         
-        repository.addImage(in, name.substring(IMAGE_FOLDER.length()+1));
+        for (Card card : lesson.getRootCategory().getCardView())
+        {
+            CardSide[] sides = {card.getFrontSide(), card.getBackSide()};
+            for (CardSide side : sides)
+            {
+                List<String> ids = side.getImages();
+                if (!ids.isEmpty())
+                    side.setImages(repository.toCanonicalIds(ids));
+            }
+        }
     }
     
     private static void removeUnusedImagesFromRepository(Lesson lesson)
     {
         Set<String> usedImageIDs = new HashSet<String>();
         
-        List<Card> allCards = lesson.getRootCategory().getCards();
-        for (Card card : allCards)
+        for (Card card : lesson.getRootCategory().getCardView())
         {
             usedImageIDs.addAll(card.getFrontSide().getImages());
             usedImageIDs.addAll(card.getBackSide().getImages());
@@ -668,21 +726,40 @@ public class XmlBuilder
         return Integer.toString((int)num);
     }
     
-    private static int readInt(NamedNodeMap attributes, String attributeItem)
+    private static int readInt(Attributes attributes, String attributeItem)
     {
-        Node num = attributes.getNamedItem(attributeItem);
-        return (num != null) ? Integer.parseInt(num.getNodeValue()) : 0;
+        String num = attributes.getValue(attributeItem);
+        return (num != null) ? Integer.parseInt(num) : 0;
     }
     
-    private static Date readDate(NamedNodeMap attributes, String attributeItem)
+    private static ReviewLog readReviewLog(Attributes attributes)
     {
-        Node date = attributes.getNamedItem(attributeItem);
+        String reviews = attributes.getValue(REVIEWS);
+        
+        if (reviews != null)
+        {
+            try
+            {
+                return ReviewLog.decode(reviews);
+            }
+            catch (IllegalArgumentException e)
+            {
+                Main.logThrowable("Could not parse review log.", e);
+            }
+        }
+        
+        return null;
+    }
+    
+    private static Date readDate(Attributes attributes, String attributeItem)
+    {
+        String date = attributes.getValue(attributeItem);
         
         if (date != null)
         {
             try
             {
-                return DATE_FORMAT.parse(date.getNodeValue());
+                return DateCodec.parse(date);
             }
             catch (ParseException e)
             {
@@ -692,4 +769,34 @@ public class XmlBuilder
         
         return null;
     }
+    
+    /**
+     * The attributes of a single tag. This lets the DOM based loader and the
+     * {@link XmlLessonReader} share the code that creates cards and session
+     * summaries.
+     */
+    interface Attributes
+    {
+        /**
+         * @return the value of given attribute or <code>null</code> if the
+         * tag has no such attribute.
+         */
+        String getValue(String name);
+    }
+    
+    private static class NodeAttributes implements Attributes
+    {
+        private NamedNodeMap m_attributes;
+        
+        public NodeAttributes(Node node)
+        {
+            m_attributes = node.getAttributes();
+        }
+        
+        public String getValue(String name)
+        {
+            Node item = m_attributes.getNamedItem(name);
+            return item != null ? item.getNodeValue() : null;
+        }
+    }
 }
@@ -0,0 +1,501 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.learn.LearnHistory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Loads a lesson XML document with a streaming (SAX) parser. Categories,
+ * cards and the learn history are created while the document is read, so
+ * that no DOM tree of the whole lesson needs to be held in memory.
+ *
+ * The parser only collects the raw attributes of the card tags. Creating
+ * the cards (parsing the formatted texts and dates) is done in batches on a
+ * thread pool while the rest of the document is read. The cards of completed
+ * batches are added to their categories in document order while reading,
+ * so that the raw attributes don't need to be kept until the end.
+ *
+ * The resulting lesson is the same as the one that is created by the DOM
+ * based loader of {@link XmlBuilder}. Don't use this class directly. Use
+ * {@link XmlBuilder#loadFromXMLFile} instead.
+ */
+class XmlLessonReader extends DefaultHandler
+{
+    private static final int       BATCH_SIZE = 512;
+
+    // the kinds of the open elements
+    private static final int       OTHER      = 0; // searched for the lesson tags
+    private static final int       CATEGORY   = 1;
+    private static final int       DECK       = 2;
+    private static final int       CARD       = 3;
+    private static final int       SIDE       = 4;
+    private static final int       HISTORY    = 5;
+
+    private Lesson                 m_lesson;
+    private boolean                m_categoryRead;
+    private boolean                m_historyRead;
+
+    private List<OpenElement>      m_elements = new ArrayList<OpenElement>();
+    private int                    m_skipDepth;  // > 0 while skipping an element
+
+    private int                    m_threads;
+    private ExecutorService        m_executor;
+    private List<CardBatch>        m_batches  = new LinkedList<CardBatch>();
+    private CardBatch              m_batch    = new CardBatch();
+
+    /**
+     * An element whose start tag was read, but not its end tag yet.
+     */
+    private static class OpenElement
+    {
+        private int          m_kind;
+        private Category     m_category;    // of category and deck elements
+        private int          m_level;       // next deck level or level of deck
+        private CardRecord   m_record;      // of card elements
+        private int          m_sides;       // number of read side elements
+        private List<String> m_images;      // of side elements
+
+        public OpenElement(int kind)
+        {
+            m_kind = kind;
+        }
+    }
+
+    /**
+     * Gives access to the attributes of a SAX element.
+     */
+    private static class SaxAttributes implements XmlBuilder.Attributes
+    {
+        private Attributes m_attributes;
+
+        public SaxAttributes(Attributes attributes)
+        {
+            m_attributes = attributes;
+        }
+
+        public String getValue(String name)
+        {
+            return m_attributes.getValue(name);
+        }
+    }
+
+    /**
+     * The content of a card tag that was read but not turned into a card yet.
+     * Only the category and level are kept after the card was created.
+     */
+    private static class CardRecord implements XmlBuilder.Attributes
+    {
+        private String[]     m_attributes; // name value pairs
+        private List<String> m_frontImages;
+        private List<String> m_backImages;
+        private Category     m_category;
+        private int          m_level;
+
+        public String getValue(String name)
+        {
+            for (int i = 0; i < m_attributes.length; i += 2)
+            {
+                if (m_attributes[i].equals(name))
+                    return m_attributes[i + 1];
+            }
+
+            return null;
+        }
+
+        public Card createCard()
+        {
+            Card card = XmlBuilder.loadCard(this);
+            card.getFrontSide().setImages(m_frontImages);
+            card.getBackSide().setImages(m_backImages);
+
+            m_attributes = null;
+            m_frontImages = null;
+            m_backImages = null;
+
+            return card;
+        }
+    }
+
+    /**
+     * Creates the cards of consecutive card records.
+     */
+    private static class CardBatch implements Callable<List<Card>>
+    {
+        private List<CardRecord>   m_records = new ArrayList<CardRecord>(BATCH_SIZE);
+        private Future<List<Card>> m_future;
+
+        public List<Card> call()
+        {
+            List<Card> cards = new ArrayList<Card>(m_records.size());
+            for (CardRecord record : m_records)
+            {
+                cards.add(record.createCard());
+            }
+
+            return cards;
+        }
+
+        /**
+         * @return the cards of this batch. Creates them on the calling thread
+         * if the batch wasn't submitted to the thread pool.
+         */
+        public List<Card> getCards() throws SAXException
+        {
+            if (m_future == null)
+                return call();
+
+            try
+            {
+                return m_future.get();
+            }
+            catch (InterruptedException e)
+            {
+                throw new SAXException(e);
+            }
+            catch (ExecutionException e)
+            {
+                // creating cards doesn't throw any checked exceptions
+                if (e.getCause() instanceof Error)
+                    throw (Error)e.getCause();
+
+                throw (RuntimeException)e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Reads the root category and the learn history from given stream into
+     * given lesson.
+     */
+    public static void read(InputStream in, Lesson lesson)
+        throws SAXException, IOException, ParserConfigurationException
+    {
+        read(in, lesson, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the root category and the learn history from given stream into
+     * given lesson.
+     *
+     * @param threads the maximum number of threads that create the cards. If
+     * this is 1, all cards are created on the calling thread.
+     */
+    public static void read(InputStream in, Lesson lesson, int threads)
+        throws SAXException, IOException, ParserConfigurationException
+    {
+        XmlLessonReader lessonReader = new XmlLessonReader(lesson, threads);
+
+        try
+        {
+            SAXParserFactory.newInstance().newSAXParser().parse(in, lessonReader);
+            lessonReader.attachCards();
+        }
+        finally
+        {
+            lessonReader.shutdown();
+        }
+    }
+
+    private XmlLessonReader(Lesson lesson, int threads)
+    {
+        m_lesson = lesson;
+        m_threads = threads;
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler
+     */
+    @Override
+    public void startElement(String uri, String localName, String name,
+        Attributes attributes) throws SAXException
+    {
+        if (m_skipDepth > 0)
+        {
+            m_skipDepth++;
+            return;
+        }
+
+        OpenElement parent = m_elements.isEmpty() ? 
+            new OpenElement(OTHER) : m_elements.get(m_elements.size() - 1);
+
+        OpenElement element = null;
+        switch (parent.m_kind)
+        {
+        case OTHER:
+            element = startLessonElement(name);
+            break;
+
+        case CATEGORY:
+            element = startCategoryChild(parent, name, attributes);
+            break;
+
+        case DECK:
+            if (name.equalsIgnoreCase(XmlBuilder.CARD))
+            {
+                element = new OpenElement(CARD);
+                element.m_record = readCard(attributes);
+                element.m_record.m_category = parent.m_category;
+                element.m_record.m_level = parent.m_level;
+            }
+            break;
+
+        case CARD:
+            // sides without a side tag have no images
+            if (name.equalsIgnoreCase(XmlBuilder.SIDE) && parent.m_sides++ < 2)
+            {
+                element = new OpenElement(SIDE);
+                element.m_images = new ArrayList<String>();
+
+                if (parent.m_sides == 1)
+                    parent.m_record.m_frontImages = element.m_images;
+                else
+                    parent.m_record.m_backImages = element.m_images;
+            }
+            break;
+
+        case SIDE:
+            if (name.equalsIgnoreCase(XmlBuilder.IMG))
+            {
+                String id = attributes.getValue(XmlBuilder.IMG_ID);
+                if (id != null)
+                    parent.m_images.add(id);
+            }
+            break;
+
+        case HISTORY:
+            XmlBuilder.loadSession(new SaxAttributes(attributes), 
+                m_lesson.getLearnHistory());
+            break;
+        }
+
+        if (element != null)
+            m_elements.add(element);
+        else
+            m_skipDepth = 1;
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler
+     */
+    @Override
+    public void endElement(String uri, String localName, String name)
+        throws SAXException
+    {
+        if (m_skipDepth > 0)
+        {
+            m_skipDepth--;
+            return;
+        }
+
+        OpenElement element = m_elements.remove(m_elements.size() - 1);
+
+        if (element.m_kind == CARD)
+            addRecord(element.m_record);
+
+        else if (element.m_kind == HISTORY)
+            m_lesson.getLearnHistory().setIsLoaded(true);
+    }
+
+    /**
+     * Like the DOM loader only the first root category and the first
+     * statistics tag are used. All other elements are searched for them.
+     */
+    private OpenElement startLessonElement(String name)
+    {
+        if (!m_categoryRead && name.equals(XmlBuilder.CATEGORY))
+        {
+            m_categoryRead = true;
+
+            OpenElement element = new OpenElement(CATEGORY);
+            element.m_category = m_lesson.getRootCategory();
+            return element;
+        }
+
+        if (!m_historyRead && name.equals(XmlBuilder.STATS_ROOT))
+        {
+            m_historyRead = true;
+            return new OpenElement(HISTORY);
+        }
+
+        return new OpenElement(OTHER);
+    }
+
+    /**
+     * @return the element for the deck or child category with given tag name
+     * or <code>null</code> if the element is to be skipped.
+     */
+    private OpenElement startCategoryChild(OpenElement parent, String name,
+        Attributes attributes)
+    {
+        if (name.equalsIgnoreCase(XmlBuilder.DECK))
+        {
+            OpenElement element = new OpenElement(DECK);
+            element.m_category = parent.m_category;
+            element.m_level = parent.m_level++;
+            return element;
+        }
+
+        if (name.equalsIgnoreCase(XmlBuilder.CATEGORY))
+        {
+            String catName = attributes.getValue(XmlBuilder.NAME);
+            if (catName == null)
+                catName = ""; //$NON-NLS-1$
+
+            Category category = parent.m_category.getChildCategory(catName);
+            if (category == null)
+            {
+                category = new Category(catName);
+                parent.m_category.addCategoryChild(category);
+            }
+
+            OpenElement element = new OpenElement(CATEGORY);
+            element.m_category = category;
+            return element;
+        }
+
+        return null;
+    }
+
+    private CardRecord readCard(Attributes attributes)
+    {
+        CardRecord record = new CardRecord();
+
+        record.m_attributes = new String[attributes.getLength() * 2];
+        for (int i = 0; i < attributes.getLength(); i++)
+        {
+            record.m_attributes[2 * i] = attributes.getQName(i);
+            record.m_attributes[2 * i + 1] = attributes.getValue(i);
+        }
+
+        // sides without a side tag have no images
+        record.m_frontImages = new ArrayList<String>();
+        record.m_backImages = new ArrayList<String>();
+
+        return record;
+    }
+
+    /**
+     * Adds the record to the current batch. Full batches are handed to the
+     * thread pool.
+     */
+    private void addRecord(CardRecord record) throws SAXException
+    {
+        m_batch.m_records.add(record);
+
+        if (m_batch.m_records.size() < BATCH_SIZE)
+            return;
+
+        if (m_threads > 1)
+        {
+            if (m_executor == null)
+                m_executor = createExecutor();
+
+            m_batch.m_future = m_executor.submit(m_batch);
+        }
+
+        m_batches.add(m_batch);
+        m_batch = new CardBatch();
+
+        attachCompleteBatches();
+    }
+
+    /**
+     * Adds the cards of the leading batches whose cards were created to their
+     * categories, so that the batches can be released while the rest of the
+     * document is read. Batches are never attached out of document order.
+     */
+    private void attachCompleteBatches() throws SAXException
+    {
+        while (!m_batches.isEmpty())
+        {
+            CardBatch batch = m_batches.get(0);
+            if (batch.m_future != null && !batch.m_future.isDone())
+                return;
+
+            attach(m_batches.remove(0));
+        }
+    }
+
+    /**
+     * Adds all remaining cards that were read to their categories in
+     * document order.
+     */
+    private void attachCards() throws SAXException
+    {
+        m_batches.add(m_batch);
+
+        for (CardBatch batch : m_batches)
+        {
+            attach(batch);
+        }
+
+        m_batches.clear();
+    }
+
+    private void attach(CardBatch batch) throws SAXException
+    {
+        List<Card> cards = batch.getCards();
+
+        for (int i = 0; i < cards.size(); i++)
+        {
+            CardRecord record = batch.m_records.get(i);
+            record.m_category.addCard(cards.get(i), record.m_level);
+        }
+    }
+
+    private ExecutorService createExecutor()
+    {
+        return Executors.newFixedThreadPool(m_threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "lesson-loader"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private void shutdown()
+    {
+        if (m_executor != null)
+            m_executor.shutdownNow();
+    }
+}
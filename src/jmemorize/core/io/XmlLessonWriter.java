@@ -0,0 +1,288 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Date;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardSide;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.ReviewLog;
+import jmemorize.core.learn.LearnHistory;
+import jmemorize.core.learn.LearnHistory.SessionSummary;
+
+/**
+ * Writes a lesson XML document directly to a stream while walking the
+ * category tree, instead of building a DOM tree of the whole lesson first.
+ * The document has the same structure as the one that was written by the
+ * DOM based saver.
+ *
+ * This class escapes the attribute values itself, because the standard
+ * XMLStreamWriter writes line breaks within attribute values unescaped and
+ * they would then be lost when the lesson is loaded again. Don't use this
+ * class directly. Use {@link XmlBuilder#saveAsXMLFile} instead.
+ */
+class XmlLessonWriter
+{
+    private static final String ENCODING    = "UTF-8"; //$NON-NLS-1$
+    private static final int    BUFFER_SIZE = 64 * 1024;
+
+    private Writer              m_out;
+
+    /**
+     * Writes given lesson to given stream. The stream is flushed but not
+     * closed, so that it can be a entry of a zip stream.
+     */
+    public static void write(OutputStream out, Lesson lesson)
+        throws IOException
+    {
+        Writer writer = new BufferedWriter(
+            new OutputStreamWriter(out, ENCODING), BUFFER_SIZE);
+
+        new XmlLessonWriter(writer).writeLesson(lesson);
+        writer.flush();
+    }
+
+    private XmlLessonWriter(Writer out)
+    {
+        m_out = out;
+    }
+
+    private void writeLesson(Lesson lesson) throws IOException
+    {
+        m_out.write("<?xml version=\"1.0\" encoding=\"" + ENCODING + "\"?>\n"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        startTag(XmlBuilder.LESSON);
+        endStartTag();
+
+        writeCategory(lesson.getRootCategory());
+        writeLearnHistory(lesson.getLearnHistory());
+
+        endTag(XmlBuilder.LESSON);
+    }
+
+    private void writeCategory(Category category) throws IOException
+    {
+        startTag(XmlBuilder.CATEGORY);
+        attribute(XmlBuilder.NAME, category.getName());
+        endStartTag();
+
+        // for all decks add a deck tag
+        for (int i = 0; i < category.getNumberOfDecks(); i++)
+        {
+            startTag(XmlBuilder.DECK);
+
+            if (category.getLocalCards(i).isEmpty())
+            {
+                endEmptyTag();
+                continue;
+            }
+
+            endStartTag();
+
+            // for all cards add a card tag
+            for (Card card : category.getLocalCards(i))
+            {
+                writeCard(card);
+            }
+
+            endTag(XmlBuilder.DECK);
+        }
+
+        // now add child categories
+        for (Category child : category.getChildCategories())
+        {
+            writeCategory(child);
+        }
+
+        endTag(XmlBuilder.CATEGORY);
+    }
+
+    private void writeCard(Card card) throws IOException
+    {
+        startTag(XmlBuilder.CARD);
+
+        // save card sides
+        attribute(XmlBuilder.FRONTSIDE, card.getFrontSide().getText().getFormatted());
+        attribute(XmlBuilder.BACKSIDE, card.getBackSide().getText().getFormatted());
+
+        // save dates
+        dateAttribute(XmlBuilder.DATE_CREATED, card.getDateCreated());
+        dateAttribute(XmlBuilder.DATE_MODIFIED, card.getDateModified());
+        dateAttribute(XmlBuilder.DATE_TOUCHED, card.getDateTouched());
+        dateAttribute(XmlBuilder.DATE_TESTED, card.getDateTested());
+        dateAttribute(XmlBuilder.DATE_EXPIRED, card.getDateExpired());
+
+        // save amount learned
+        attribute(XmlBuilder.AMOUNT_LEARNED_FRONT,
+            Integer.toString(card.getLearnedAmount(true)));
+        attribute(XmlBuilder.AMOUNT_LEARNED_BACK,
+            Integer.toString(card.getLearnedAmount(false)));
+
+        // save stats
+        attribute(XmlBuilder.TESTS_TOTAL, Integer.toString(card.getTestsTotal()));
+        attribute(XmlBuilder.TESTS_HIT, Integer.toString(card.getTestsPassed()));
+
+        // save reviews
+        ReviewLog reviewLog = card.getReviewLog();
+        if (reviewLog != null && !reviewLog.isEmpty())
+            attribute(XmlBuilder.REVIEWS, reviewLog.encode());
+        endStartTag();
+
+        // save images
+        writeImages(card.getFrontSide());
+        writeImages(card.getBackSide());
+
+        endTag(XmlBuilder.CARD);
+    }
+
+    private void writeImages(CardSide cardSide) throws IOException
+    {
+        startTag(XmlBuilder.SIDE);
+
+        if (cardSide.getImages().isEmpty())
+        {
+            endEmptyTag();
+            return;
+        }
+
+        endStartTag();
+
+        for (String imgID : cardSide.getImages())
+        {
+            startTag(XmlBuilder.IMG);
+            attribute(XmlBuilder.IMG_ID, imgID);
+            endEmptyTag();
+        }
+
+        endTag(XmlBuilder.SIDE);
+    }
+
+    private void writeLearnHistory(LearnHistory history) throws IOException
+    {
+        startTag(XmlBuilder.STATS_ROOT);
+
+        if (history.getSummaries().isEmpty())
+        {
+            endEmptyTag();
+            return;
+        }
+
+        endStartTag();
+
+        for (SessionSummary summary : history.getSummaries())
+        {
+            startTag(XmlBuilder.SESSION);
+            dateAttribute(XmlBuilder.STATS_START, summary.getStart());
+            dateAttribute(XmlBuilder.STATS_END, summary.getEnd());
+
+            attribute(XmlBuilder.STATS_PASSED, toInteger(summary.getPassed()));
+            attribute(XmlBuilder.STATS_FAILED, toInteger(summary.getFailed()));
+            attribute(XmlBuilder.STATS_SKIPPED, toInteger(summary.getSkipped()));
+            attribute(XmlBuilder.STATS_RELEARNED, toInteger(summary.getRelearned()));
+            endEmptyTag();
+        }
+
+        endTag(XmlBuilder.STATS_ROOT);
+    }
+
+    private void startTag(String name) throws IOException
+    {
+        m_out.write('<');
+        m_out.write(name);
+    }
+
+    private void endStartTag() throws IOException
+    {
+        m_out.write(">\n"); //$NON-NLS-1$
+    }
+
+    private void endEmptyTag() throws IOException
+    {
+        m_out.write("/>\n"); //$NON-NLS-1$
+    }
+
+    private void endTag(String name) throws IOException
+    {
+        m_out.write("</"); //$NON-NLS-1$
+        m_out.write(name);
+        m_out.write(">\n"); //$NON-NLS-1$
+    }
+
+    /**
+     * Writes the attribute if the date is not <code>null</code>.
+     */
+    private void dateAttribute(String name, Date date) throws IOException
+    {
+        if (date != null)
+            attribute(name, DateCodec.format(date));
+    }
+
+    private void attribute(String name, String value) throws IOException
+    {
+        m_out.write(' ');
+        m_out.write(name);
+        m_out.write("=\""); //$NON-NLS-1$
+
+        int start = 0;
+        for (int i = 0; i < value.length(); i++)
+        {
+            String escaped = escape(value.charAt(i));
+            if (escaped == null)
+                continue;
+
+            m_out.write(value, start, i - start);
+            m_out.write(escaped);
+            start = i + 1;
+        }
+
+        m_out.write(value, start, value.length() - start);
+        m_out.write('"');
+    }
+
+    /**
+     * @return the entity for given character or <code>null</code> if the
+     * character can be written as it is within an attribute value.
+     */
+    private static String escape(char c)
+    {
+        switch (c)
+        {
+        case '&':  return "&amp;";  //$NON-NLS-1$
+        case '<':  return "&lt;";   //$NON-NLS-1$
+        case '>':  return "&gt;";   //$NON-NLS-1$
+        case '"':  return "&quot;"; //$NON-NLS-1$
+        case '\n': return "&#10;";  //$NON-NLS-1$
+        case '\r': return "&#13;";  //$NON-NLS-1$
+        case '\t': return "&#9;";   //$NON-NLS-1$
+        default:   return null;
+        }
+    }
+
+    private static String toInteger(float num)
+    {
+        return Integer.toString((int)num);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.learn;
+
+import java.util.Date;
+
+import jmemorize.core.Card;
+import jmemorize.core.ReviewLog;
+
+/**
+ * A scheduler that adapts the delays to every single card, similar to the
+ * SM-2 algorithm. Each card has an ease factor that grows when the card is
+ * answered quickly and shrinks when it is answered slowly or failed. After
+ * the first two fixed delays, every delay is the previous delay multiplied by
+ * the ease factor. If a card was remembered for longer than its delay, e.g.
+ * because the user didn't learn for some time, the longer time is used
+ * instead, because the card has proven to be more stable than expected.
+ *
+ * The state of a card is not stored but replayed from its review log. Cards
+ * that were learned before the review log existed start with the number of
+ * repetitions given by their deck level.
+ */
+public class AdaptiveScheduler implements Scheduler
+{
+    public static final float INITIAL_EASE    = 2.5f;
+    public static final float MIN_EASE        = 1.3f;
+
+    public static final long  FIRST_DELAY     = Card.ONE_DAY;
+    public static final long  SECOND_DELAY    = 6 * Card.ONE_DAY;
+    public static final long  MAX_DELAY       = 3650 * Card.ONE_DAY;
+
+    // answers that need more time than this are considered as hard
+    private static final int  FAST_RESPONSE   = 8 * 1000;
+    private static final int  SLOW_RESPONSE   = 30 * 1000;
+
+    private LearnSettings     m_settings;
+
+    public AdaptiveScheduler(LearnSettings settings)
+    {
+        m_settings = settings;
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.learn.Scheduler
+     */
+    public Date getExpirationDate(Card card, Date testDate)
+    {
+        Date date = new Date(testDate.getTime() + getDelay(card));
+        return m_settings.adjustExpirationDate(date);
+    }
+
+    /**
+     * @return the delay in milliseconds after which given card needs to be
+     * checked again. The last review in the review log of the card is
+     * expected to be the review that was just passed. If the card has no
+     * reviews, it is treated as if it was passed on its current level.
+     */
+    public long getDelay(Card card)
+    {
+        ReviewLog log = card.getReviewLog();
+
+        int repetitions = -1;
+        float ease = INITIAL_EASE;
+        long delay = 0;
+        long lastTime = 0;
+
+        for (int i = 0; log != null && i < log.size(); i++)
+        {
+            boolean passed = log.isPassed(i);
+
+            // cards that need to be checked on both sides can be passed
+            // partially, which doesn't change the level
+            if (passed && log.getLevelAfter(i) <= log.getLevelBefore(i))
+                continue;
+
+            if (repetitions < 0)
+            {
+                repetitions = log.getLevelBefore(i);
+                delay = getInitialDelay(repetitions);
+            }
+
+            int quality = getQuality(passed, log.getResponseTime(i));
+            ease = Math.max(MIN_EASE,
+                ease + 0.1f - (5 - quality) * (0.08f + (5 - quality) * 0.02f));
+
+            if (passed)
+            {
+                long time = log.getTime(i);
+                long elapsed = lastTime > 0 ? time - lastTime : 0;
+
+                repetitions++;
+                delay = getNextDelay(repetitions, Math.max(delay, elapsed), ease);
+            }
+            else
+            {
+                repetitions = 0;
+                delay = 0;
+            }
+
+            lastTime = log.getTime(i);
+        }
+
+        if (repetitions < 0)
+            return getInitialDelay(card.getLevel() + 1);
+
+        return delay;
+    }
+
+    private static long getInitialDelay(int repetitions)
+    {
+        long delay = 0;
+        for (int i = 1; i <= repetitions; i++)
+            delay = getNextDelay(i, delay, INITIAL_EASE);
+
+        return delay;
+    }
+
+    private static long getNextDelay(int repetitions, long delay, float ease)
+    {
+        if (repetitions <= 1)
+            return FIRST_DELAY;
+
+        if (repetitions == 2)
+            return SECOND_DELAY;
+
+        return Math.min((long)(delay * ease), MAX_DELAY);
+    }
+
+    /**
+     * @return the quality of an answer on the SM-2 scale, where 5 is a
+     * perfect answer and everything below 3 is a failed answer.
+     */
+    private static int getQuality(boolean passed, int responseTime)
+    {
+        if (!passed)
+            return 2;
+
+        if (responseTime < FAST_RESPONSE)
+            return 5;
+
+        return responseTime < SLOW_RESPONSE ? 4 : 3;
+    }
+}
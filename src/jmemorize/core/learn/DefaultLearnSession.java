@@ -19,6 +19,8 @@
 package jmemorize.core.learn;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -28,6 +30,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
 import java.util.logging.ConsoleHandler;
@@ -38,6 +41,7 @@ import java.util.logging.Logger;
 import jmemorize.core.Card;
 import jmemorize.core.Category;
 import jmemorize.core.CategoryObserver;
+import jmemorize.core.ImageRepository;
 import jmemorize.util.EquivalenceClassSet;
 
 /**
@@ -74,6 +78,12 @@ import jmemorize.util.EquivalenceClassSet;
  */
 public class DefaultLearnSession implements CategoryObserver, LearnSession
 {
+    /**
+     * The number of upcoming cards whose images are decoded in the background
+     * while the current card is shown.
+     */
+    private static final int PREFETCH_CARDS = 3;
+    
     /**
      * A Comparator that is used for sorting cards in learn sessions.
      * This is used to sort the cards into equivalence classes, from
@@ -189,6 +199,78 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         }
     }
     
+    /**
+     * The ids of the cards in the order in which they were last shown. This
+     * is a doubly linked list that is threaded through two arrays indexed by
+     * card id, so that moving a card to the end takes constant time.
+     */
+    private static class CheckedOrder
+    {
+        private static final int NONE         = -1;
+        private static final int NOT_CHECKED  = -2;
+        
+        private int[] m_prev; // NOT_CHECKED for ids that aren't in the list
+        private int[] m_next;
+        private int   m_first = NONE;
+        private int   m_last  = NONE;
+        
+        public CheckedOrder(int capacity)
+        {
+            m_prev = new int[capacity];
+            m_next = new int[capacity];
+            Arrays.fill(m_prev, NOT_CHECKED);
+        }
+        
+        /**
+         * Appends the id, removing it from its old position if necessary.
+         */
+        public void moveToEnd(int id)
+        {
+            remove(id);
+            
+            m_prev[id] = m_last;
+            m_next[id] = NONE;
+            
+            if (m_last != NONE)
+                m_next[m_last] = id;
+            else
+                m_first = id;
+            
+            m_last = id;
+        }
+        
+        public void remove(int id)
+        {
+            if (m_prev[id] == NOT_CHECKED)
+                return;
+            
+            if (m_prev[id] != NONE)
+                m_next[m_prev[id]] = m_next[id];
+            else
+                m_first = m_next[id];
+            
+            if (m_next[id] != NONE)
+                m_prev[m_next[id]] = m_prev[id];
+            else
+                m_last = m_prev[id];
+            
+            m_prev[id] = NOT_CHECKED;
+        }
+        
+        public int getFirst()
+        {
+            return m_first;
+        }
+        
+        /**
+         * @return the id that follows given id or -1 if it is the last one.
+         */
+        public int getNext(int id)
+        {
+            return m_next[id];
+        }
+    }
+    
     // learn session settings
     private Category                       m_category;
     
@@ -208,11 +290,18 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     private EquivalenceClassSet<CardInfo>  m_cardsActive;
     private EquivalenceClassSet<CardInfo>  m_cardsReserve;
     
+    // the cards that didn't make it into a card limited session. They are
+    // moved to the reserve when it is needed for the first time.
+    private List<CardInfo>                 m_reserveBacklog;
+    
     // the list of all cards that have been checked in the order last seen. Does 
     // not include cards that were skipped and never passed/failed.
-    private List<Card>                     m_cardsChecked = new ArrayList<Card>();
-    private Set<Card>                      m_cardsLearned = new HashSet<Card>();
-    private Map<Card, CardInfo>            m_cardsInfoMap = new HashMap<Card, CardInfo>();
+    private CheckedOrder                   m_cardsChecked;
+    
+    // the session state is indexed by the ids of the cards (see Card.getId()).
+    // Cards that are not part of this session have no card info.
+    private CardInfo[]                     m_cardInfos;
+    private BitSet                         m_cardsLearned = new BitSet();
 
     // NOTE - m_cardsLearned is the set of all cards successfully learned
     // this session, which is the union of "passed" and "relearned".
@@ -222,17 +311,16 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     // "Failed" = EverFailed - Learned
     
     // These sets are non exclusive markers that indicate the status of a card
-    // Note that these are Sets not Lists.  Two reasons:
-    //  1)  The order is not important.
-    //  2)  Lookup efficiency is better.
+    // Note that these are sets of card ids, because the order is not 
+    // important and they are much smaller and faster than sets of cards.
     
     // Cards do not get removed from the EverFailed list.
-    private Set<Card>            m_cardsEverFailed  = new HashSet<Card>();
-    private Set<Card>            m_cardsSkipped     = new HashSet<Card>();
+    private BitSet               m_cardsEverFailed  = new BitSet();
+    private BitSet               m_cardsSkipped     = new BitSet();
 
     // NOTE - this is only the *active* cards which are partially learned -
     // there may be others in the reserve set.
-    private Set<Card>            m_cardsActivePartiallyLearned = new HashSet<Card>();
+    private BitSet               m_cardsActivePartiallyLearned = new BitSet();
      
     // Further invariants:
     //   - Learned intsersection Skipped = NULL
@@ -244,6 +332,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
 
     private Date                 m_start;
     private Date                 m_end;
+    private long                 m_cardShownTime;
     
     private Logger               m_logger = Logger.getLogger("jmemorize.session");
     
@@ -271,10 +360,26 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         Map<Category, Integer> order = m_settings.isGroupByCategory() ? 
             createCategoryGroupOrder() : null;
             
-        m_cardsActive = fetchCards(selectedCards, learnUnlearned, learnExpired, order);
-        m_cardsReserve = new EquivalenceClassSet<CardInfo>(m_cardsActive.getComparator());
+        List<CardInfo> cardInfos = fetchCards(selectedCards, learnUnlearned, learnExpired);
+        m_cardsChecked = new CheckedOrder(m_cardInfos.length);
+        
+        CardComparator comparator = new CardComparator(order);
+        m_cardsActive = new EquivalenceClassSet<CardInfo>(comparator);
+        m_cardsReserve = new EquivalenceClassSet<CardInfo>(comparator);
         // Note that EquivalenceClassSets always default to shuffle mode (any card
         // from the current class may be chosen next.)  This is what we want here. 
+        
+        // only sort as many cards as needed, the others go to the reserve
+        if (m_settings.isCardLimitEnabled() && 
+            cardInfos.size() > m_settings.getCardLimit()) 
+        {
+            m_reserveBacklog = selectFirstCards(cardInfos, 
+                m_settings.getCardLimit(), comparator);
+        }
+        else
+        {
+            m_cardsActive.addAll(cardInfos);
+        }
     }
 
     /* (non-Javadoc)
@@ -288,14 +393,6 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         m_learningStarted = true;
         m_start = new Date();
         
-        // move all cards to cardsPastLimit, then fetch exactly as many as needed
-        if (m_settings.isCardLimitEnabled() && 
-            m_cardsActive.size() > m_settings.getCardLimit()) 
-        {
-            m_cardsReserve = m_cardsActive;
-            m_cardsActive = m_cardsReserve.partition(m_settings.getCardLimit());
-        }
-        
         gotoNextCard();
     }
 
@@ -347,17 +444,23 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
      */
     public Set<Card> getCardsLeft()
     {
-        return Collections.unmodifiableSet(toCardSet(m_cardsActive));
+        Set<Card> cards = toCardSet(m_cardsActive);
+        
+        // the card limit only applies once learning has started
+        if (!m_learningStarted && m_reserveBacklog != null)
+            cards.addAll(toCardSet(m_reserveBacklog));
+        
+        return Collections.unmodifiableSet(cards);
     }
         
     public int getNCardsPartiallyLearned() 
     {
-        return m_cardsActivePartiallyLearned.size();     
+        return m_cardsActivePartiallyLearned.cardinality();
     }
     
     public int getNCardsLearned() 
     {
-        return m_cardsLearned.size();     
+        return m_cardsLearned.cardinality();
     }
     
     /* (non-Javadoc)
@@ -378,12 +481,16 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         m_logger.fine(String.format("cardChecked: %b %s", 
             passed, currentCard.getFrontSide().getText()));
         
-        assert !m_cardsLearned.contains(currentCard);
+        int id = currentCard.getId();
+        
+        assert !m_cardsLearned.get(id);
         assert !m_cardsReserve.contains(m_currentCardInfo);
         assert m_cardsActive.contains(m_currentCardInfo);
         
-        m_cardsSkipped.remove(currentCard);
-        m_cardsActivePartiallyLearned.remove(currentCard);
+        m_cardsSkipped.clear(id);
+        m_cardsActivePartiallyLearned.clear(id);
+        
+        int level = currentCard.getLevel();
 
         if (passed)
         {
@@ -408,10 +515,12 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
                 {
                     // It's partially learned.
                     //  increment the amount it has been learned by
-                    m_cardsActivePartiallyLearned.add(currentCard);
+                    m_cardsActivePartiallyLearned.set(id);
                     m_logger.fine("...partially passed.");
                     raiseLevel = false;
 
+                    addReview(currentCard, true, shownFlipped, level);
+
                     // incremenLearnedAmount fires a DECK_EVENT
                     currentCard.incrementLearnedAmount(!shownFlipped);
                 }
@@ -420,6 +529,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
             if (raiseLevel)
             {
                 m_logger.fine("...passed.");
+                addReview(currentCard, true, shownFlipped, level + 1);
                 raiseCardLevel(currentCard);
             }
         }
@@ -432,7 +542,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         
             if (currentCard.getLevel() > 0)
             {
-                m_cardsEverFailed.add(currentCard);
+                m_cardsEverFailed.set(id);
                 m_logger.fine("...failed.");
             }
             
@@ -445,6 +555,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
              * but this should not be a problem for gotoNextCard.
              * We reset the equivalence class as soon as possible.
              */
+            addReview(currentCard, false, shownFlipped, 0);
             Category.resetCardLevel(currentCard, m_start);
             
             m_currentCardInfo.setLevel(currentCard.getLevel());
@@ -453,7 +564,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         
         m_logger.fine("...Cards remaining: " + m_cardsActive.size());
         m_logger.fine("...Cards partially learned: " + getNCardsPartiallyLearned());
-        m_logger.fine("...num failed= " + m_cardsEverFailed.size());
+        m_logger.fine("...num failed= " + m_cardsEverFailed.cardinality());
 
         // note that raising/reseting card level will be noticed by onCardEvent.
         // program flow continues there.
@@ -469,15 +580,18 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         // Note that we do not remove the card from m_cardsChecked.
         m_logger.fine("cardSkipped: " + currentCard.getFrontSide());
         
-        assert !m_cardsLearned.contains(currentCard);
+        int id = currentCard.getId();
+        
+        assert !m_cardsLearned.get(id);
         assert !m_cardsReserve.contains(m_currentCardInfo);
         assert m_cardsActive.contains(m_currentCardInfo);
 
-        m_cardsSkipped.add(currentCard);
+        m_cardsSkipped.set(id);
+        fillReserve();
         
         if (m_cardsReserve != null && m_cardsReserve.size() > 0) 
         {
-            m_cardsActivePartiallyLearned.remove(m_currentCardInfo);
+            m_cardsActivePartiallyLearned.clear(id);
             
             CardInfo replacementCardInfo = m_cardsReserve.loopIterator().next();
             Card replacementCard = replacementCardInfo.getCard();
@@ -485,7 +599,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
             if (replacementCard.getLearnedAmount(true) > 0 || 
                 replacementCard.getLearnedAmount(false) > 0) 
             {
-                m_cardsActivePartiallyLearned.add(replacementCard);                
+                m_cardsActivePartiallyLearned.set(replacementCard.getId());
             }
             
             m_cardsActive.add(replacementCardInfo);
@@ -510,9 +624,9 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     public Set<Card> getPassedCards()
     {
         // "passed" = Learned and not Failed
-        Set<Card> tempSet = new HashSet<Card>(m_cardsLearned);
-        tempSet.removeAll(m_cardsEverFailed);
-        return Collections.unmodifiableSet(tempSet);
+        BitSet ids = (BitSet)m_cardsLearned.clone();
+        ids.andNot(m_cardsEverFailed);
+        return Collections.unmodifiableSet(toCardSet(ids));
     }
 
     /* (non-Javadoc)
@@ -520,9 +634,9 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
      */
     public Set<Card> getFailedCards()
     {
-        Set<Card> tempSet = new HashSet<Card>(m_cardsEverFailed);
-        tempSet.removeAll(m_cardsLearned);
-        return Collections.unmodifiableSet(tempSet);
+        BitSet ids = (BitSet)m_cardsEverFailed.clone();
+        ids.andNot(m_cardsLearned);
+        return Collections.unmodifiableSet(toCardSet(ids));
     }
 
     /* (non-Javadoc)
@@ -530,7 +644,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
      */
     public Set<Card> getSkippedCards()
     {
-        return Collections.unmodifiableSet(m_cardsSkipped);
+        return Collections.unmodifiableSet(toCardSet(m_cardsSkipped));
     }
 
     /* (non-Javadoc)
@@ -538,9 +652,9 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
      */
     public Set<Card> getRelearnedCards()
     {
-        Set<Card> tempSet = new HashSet<Card>(m_cardsEverFailed);
-        tempSet.retainAll(m_cardsLearned);
-        return Collections.unmodifiableSet(tempSet);
+        BitSet ids = (BitSet)m_cardsEverFailed.clone();
+        ids.and(m_cardsLearned);
+        return Collections.unmodifiableSet(toCardSet(ids));
     }
 
     /* (non-Javadoc)
@@ -565,7 +679,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         {
         case ADDED_EVENT:
             // if there is a reserve and we have enough cards, add to the reserve
-            int allCards = m_cardsLearned.size() + m_cardsActive.size();
+            int allCards = m_cardsLearned.cardinality() + m_cardsActive.size();
             if (m_settings.isCardLimitEnabled() && allCards >= m_settings.getCardLimit())
             {
                 m_cardsReserve.add(cardInfo);
@@ -578,19 +692,20 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
             
         case REMOVED_EVENT:
             // remove it from all sets
+            fillReserve();
             m_cardsActive.remove(cardInfo);
             m_cardsReserve.remove(cardInfo);
-            m_cardsLearned.remove(card);
-            m_cardsActivePartiallyLearned.remove(card);
-            m_cardsEverFailed.remove(card);
-            m_cardsSkipped.remove(card);
+            m_cardsLearned.clear(card.getId());
+            m_cardsActivePartiallyLearned.clear(card.getId());
+            m_cardsEverFailed.clear(card.getId());
+            m_cardsSkipped.clear(card.getId());
             
             if (cardInfo == m_currentCardInfo)
             {
                 gotoNextCard();
             }
             
-            m_cardsChecked.remove(card);
+            m_cardsChecked.remove(card.getId());
             break;
             
         case DECK_EVENT:
@@ -621,7 +736,13 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     {
         // TODO the meaning of this collides with the naming of checkCard(..)
         // because it also includes skipped cards
-        return Collections.unmodifiableList(m_cardsChecked);
+        List<Card> cards = new ArrayList<Card>();
+        for (int id = m_cardsChecked.getFirst(); id >= 0; id = m_cardsChecked.getNext(id))
+        {
+            cards.add(m_cardInfos[id].getCard());
+        }
+        
+        return Collections.unmodifiableList(cards);
     }
     
     /* (non-Javadoc)
@@ -629,7 +750,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
      */
     public boolean isRelevant()
     {
-        return m_cardsEverFailed.size() > 0 || m_cardsLearned.size() > 0;
+        return !m_cardsEverFailed.isEmpty() || !m_cardsLearned.isEmpty();
     }
 
     /* (non-Javadoc)
@@ -664,11 +785,26 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     {
         boolean noCardsLeft = m_cardsActive.size() == 0;
         boolean limitReached = m_settings.isCardLimitEnabled() && 
-               m_cardsLearned.size() >= m_settings.getCardLimit();
+               m_cardsLearned.cardinality() >= m_settings.getCardLimit();
         
         return m_quit || noCardsLeft || limitReached;
     }
 
+    /**
+     * Appends the review of the current card to its review log. This needs
+     * to be done before the card level is changed, because the fired events
+     * can already show the next card or end the session.
+     */
+    private void addReview(Card card, boolean passed, boolean shownFlipped,
+        int levelAfter)
+    {
+        long now = System.currentTimeMillis();
+        long responseTime = Math.min(now - m_cardShownTime, Integer.MAX_VALUE);
+        
+        card.addReview(now, passed, shownFlipped, (int)responseTime, 
+            card.getLevel(), levelAfter);
+    }
+    
     private void raiseCardLevel(Card card)
     {    
         CardInfo cardInfo = getCardInfo(card);
@@ -676,10 +812,9 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         assert cardInfo != null;
         
         m_cardsActive.remove(cardInfo);
-        m_cardsLearned.add(card);
+        m_cardsLearned.set(card.getId());
         
-        int level = card.getLevel();
-        Date expiration = m_settings.getExpirationDate(m_start, level);
+        Date expiration = m_settings.getScheduler().getExpirationDate(card, m_start);
         Category.raiseCardLevel(card, m_start, expiration);
     }
  
@@ -703,19 +838,42 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
             }
             
             // add the new card to the checked list now so it can be edited as part of the set.
-            // m_cardsChecked is ordered by last viewing, so remove prior to add 
+            // m_cardsChecked is ordered by last viewing, so move it to the end
             Card currentCard = m_currentCardInfo.getCard();
+            m_cardShownTime = System.currentTimeMillis();
             
-            m_cardsChecked.remove(currentCard);
-            m_cardsChecked.add(currentCard);
+            m_cardsChecked.moveToEnd(currentCard.getId());
             
             boolean flippedMode = checkIfFlipped();
             for (LearnCardObserver observer : m_cardObservers)
             {
                 observer.nextCardFetched(currentCard, flippedMode);
             }
+            
+            prefetchImages();
         }
     }
+    
+    /**
+     * Has the images of the cards that will probably be shown next decoded in
+     * the background, so that they don't need to be decoded when the cards
+     * are shown.
+     */
+    private void prefetchImages()
+    {
+        List<String> imageIds = new ArrayList<String>();
+        for (CardInfo cardInfo : m_cardsActive.peekLoopIterator(PREFETCH_CARDS + 1))
+        {
+            if (cardInfo == m_currentCardInfo)
+                continue;
+            
+            Card card = cardInfo.getCard();
+            imageIds.addAll(card.getFrontSide().getImages());
+            imageIds.addAll(card.getBackSide().getImages());
+        }
+        
+        ImageRepository.getInstance().prefetchImages(imageIds);
+    }
 
     /**
      * Checks whether the card should be displayed as flipped or not.
@@ -764,9 +922,8 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
      * Fetch the cards that should be learned in this session according to given
      * params.
      */
-    private EquivalenceClassSet<CardInfo> fetchCards(List<Card> selectedCards, 
-        boolean learnUnlearnedCards, boolean learnExpiredCards, 
-        Map<Category, Integer> categoryGroupOrder)
+    private List<CardInfo> fetchCards(List<Card> selectedCards, 
+        boolean learnUnlearnedCards, boolean learnExpiredCards)
     {
         List<Card> cards = new ArrayList<Card>();
         
@@ -780,54 +937,109 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
             cards.addAll(selectedCards);
         
         
-        List<Integer> levels = new LinkedList<Integer>();
-        List<CardInfo> cardInfos = new ArrayList<CardInfo>(cards.size());
-        m_cardsInfoMap.clear();
+        // gather the card infos and the distinct levels in a single pass
+        CardInfo[] cardInfos = new CardInfo[cards.size()];
+        BitSet levelSet = new BitSet();
+        m_cardInfos = new CardInfo[m_rootCategory.getCardIdCount()];
         
+        int n = 0;
         for (Card card : cards)
         {
             CardInfo cardInfo = new CardInfo(card);
-            cardInfos.add(cardInfo);
-            
-            m_cardsInfoMap.put(card, cardInfo);
+            cardInfos[n++] = cardInfo;
             
-            if (!levels.contains(card.getLevel()))
-                levels.add(card.getLevel());
+            m_cardInfos[card.getId()] = cardInfo;
+            levelSet.set(card.getLevel());
+        }
+        
+        int[] levels = new int[levelSet.cardinality()];
+        int[] levelIndexes = new int[levelSet.length()]; // by level
+        for (int i = 0, level = levelSet.nextSetBit(0); level >= 0; 
+            i++, level = levelSet.nextSetBit(level + 1))
+        {
+            levels[i] = level;
+            levelIndexes[level] = i;
         }
         
         // shuffle random cards
         float shuffleRatio = m_settings.getShuffleRatio();
         int shuffledCardsCount = (int)(shuffleRatio * cards.size());
         
-        
-        List<CardInfo> shuffledCardInfos = new ArrayList<CardInfo>(shuffledCardsCount);
-        if (levels.size() > 1)
+        if (levels.length > 1)
         {
+            // partial Fisher-Yates shuffle. the first cards are the shuffled ones
             for (int i = 0; i < shuffledCardsCount; i++)
             {
-                int randIndex = m_rand.nextInt(cardInfos.size()); 
+                int randIndex = i + m_rand.nextInt(n - i); 
                 
-                CardInfo cardInfo = cardInfos.remove(randIndex);
-                shuffledCardInfos.add(cardInfo);
+                CardInfo cardInfo = cardInfos[randIndex];
+                cardInfos[randIndex] = cardInfos[i];
+                cardInfos[i] = cardInfo;
                 
                 // randomly find a new level, which ISN'T our current level
-                int randLevel = m_rand.nextInt(levels.size() - 1);
+                int randLevel = m_rand.nextInt(levels.length - 1);
                 
-                if (randLevel >= cardInfo.getLevel())
+                if (randLevel >= levelIndexes[cardInfo.getLevel()])
                     randLevel++; 
                 
-                cardInfo.setLevel(levels.get(randLevel));
+                cardInfo.setLevel(levels[randLevel]);
             }
         }
-            
-        // create equivalence set
-        EquivalenceClassSet<CardInfo> cardSet = 
-            new EquivalenceClassSet<CardInfo>(new CardComparator(categoryGroupOrder));
         
-        cardSet.addAll(cardInfos);
-        cardSet.addAll(shuffledCardInfos);
+        return Arrays.asList(cardInfos);
+    }
+    
+    /**
+     * Adds the first cards in comparator order to the active set by keeping
+     * them in a bounded heap, so that the other cards don't need to be sorted.
+     * 
+     * @return the cards that were not selected, in no particular order.
+     */
+    private List<CardInfo> selectFirstCards(List<CardInfo> cardInfos, int count, 
+        Comparator<CardInfo> comparator)
+    {
+        // equivalent cards at the limit are chosen randomly, like when
+        // partitioning an equivalence class set
+        Collections.shuffle(cardInfos, m_rand);
+        
+        // the top of the heap is the last of the selected cards
+        PriorityQueue<CardInfo> heap = new PriorityQueue<CardInfo>(count, 
+            Collections.reverseOrder(comparator));
+        List<CardInfo> rest = new ArrayList<CardInfo>(cardInfos.size() - count);
+        
+        for (CardInfo cardInfo : cardInfos)
+        {
+            if (heap.size() < count)
+            {
+                heap.add(cardInfo);
+            }
+            else if (comparator.compare(cardInfo, heap.peek()) < 0)
+            {
+                rest.add(heap.poll());
+                heap.add(cardInfo);
+            }
+            else
+            {
+                rest.add(cardInfo);
+            }
+        }
         
-        return cardSet;
+        m_cardsActive.addAll(heap);
+        return rest;
+    }
+    
+    /**
+     * Moves the cards that didn't make it into a card limited session to the
+     * reserve. This is deferred until the reserve is actually needed, because
+     * most sessions don't need it at all.
+     */
+    private void fillReserve()
+    {
+        if (m_reserveBacklog != null)
+        {
+            m_cardsReserve.addAll(m_reserveBacklog);
+            m_reserveBacklog = null;
+        }
     }
     
     private Set<Card> toCardSet(Collection<CardInfo> cardInfos)
@@ -841,9 +1053,26 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         return set;
     }
     
+    private Set<Card> toCardSet(BitSet ids)
+    {
+        HashSet<Card> set = new HashSet<Card>();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1))
+        {
+            set.add(m_cardInfos[id].getCard());
+        }
+        
+        return set;
+    }
+    
     private CardInfo getCardInfo(Card card)
     {
-        return m_cardsInfoMap.get(card); 
+        int id = card.getId();
+        if (id < 0 || id >= m_cardInfos.length)
+            return null;
+        
+        // ids are only unique within a category tree
+        CardInfo cardInfo = m_cardInfos[id];
+        return cardInfo != null && cardInfo.getCard() == card ? cardInfo : null; 
     }
 
     /**
@@ -26,11 +26,14 @@ import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.OutputKeys;
@@ -312,6 +315,101 @@ public class LearnHistory
         }
     }
     
+    /**
+     * The aggregated summaries of all sessions that started in the same
+     * calendar unit (e.g. day or week), sorted by the value of the unit. The 
+     * values are stored in primitive arrays, so that a unit is found with a
+     * binary search instead of looking at every session.
+     */
+    private static class Buckets
+    {
+        private long[]  m_keys      = new long[16];
+        private int[]   m_duration  = new int[16];
+        private float[] m_passed    = new float[16];
+        private float[] m_failed    = new float[16];
+        private float[] m_skipped   = new float[16];
+        private float[] m_relearned = new float[16];
+        private int     m_size;
+        
+        public void add(long key, SessionSummary summary)
+        {
+            int i = Arrays.binarySearch(m_keys, 0, m_size, key);
+            
+            if (i < 0)
+            {
+                i = -i - 1;
+                insert(i, key);
+            }
+            
+            m_duration[i]  += summary.m_duration;
+            m_passed[i]    += summary.m_passed;
+            m_failed[i]    += summary.m_failed;
+            m_skipped[i]   += summary.m_skipped;
+            m_relearned[i] += summary.m_relearned;
+        }
+        
+        /**
+         * @return the index of the bucket with given key or a negative value
+         * if there is no such bucket.
+         */
+        public int indexOf(long key)
+        {
+            return Arrays.binarySearch(m_keys, 0, m_size, key);
+        }
+        
+        private void insert(int index, long key)
+        {
+            if (m_size == m_keys.length)
+            {
+                int capacity = m_size * 2;
+                m_keys      = copyOf(m_keys, capacity);
+                m_duration  = copyOf(m_duration, capacity);
+                m_passed    = copyOf(m_passed, capacity);
+                m_failed    = copyOf(m_failed, capacity);
+                m_skipped   = copyOf(m_skipped, capacity);
+                m_relearned = copyOf(m_relearned, capacity);
+            }
+            
+            // sessions are usually added in order, so that nothing is moved
+            int moved = m_size - index;
+            System.arraycopy(m_keys, index, m_keys, index + 1, moved);
+            System.arraycopy(m_duration, index, m_duration, index + 1, moved);
+            System.arraycopy(m_passed, index, m_passed, index + 1, moved);
+            System.arraycopy(m_failed, index, m_failed, index + 1, moved);
+            System.arraycopy(m_skipped, index, m_skipped, index + 1, moved);
+            System.arraycopy(m_relearned, index, m_relearned, index + 1, moved);
+            
+            m_keys[index]      = key;
+            m_duration[index]  = 0;
+            m_passed[index]    = 0;
+            m_failed[index]    = 0;
+            m_skipped[index]   = 0;
+            m_relearned[index] = 0;
+            m_size++;
+        }
+        
+        private static long[] copyOf(long[] array, int length)
+        {
+            long[] copy = new long[length];
+            System.arraycopy(array, 0, copy, 0, array.length);
+            return copy;
+        }
+        
+        private static int[] copyOf(int[] array, int length)
+        {
+            int[] copy = new int[length];
+            System.arraycopy(array, 0, copy, 0, array.length);
+            return copy;
+        }
+        
+        private static float[] copyOf(float[] array, int length)
+        {
+            float[] copy = new float[length];
+            System.arraycopy(array, 0, copy, 0, array.length);
+            return copy;
+        }
+    }
+    
     public static final CalendarComparator SIMPLE_COMP = new SimpleComparator();
     public static final CalendarComparator DATE_COMP   = new DateComparator();
     public static final CalendarComparator WEEK_COMP   = new WeekComparator();
@@ -321,6 +419,10 @@ public class LearnHistory
     // TODO enforce that m_summaries is always sorted in descending date order
     private List<SessionSummary>    m_summaries = new ArrayList<SessionSummary>();
     
+    // the buckets of all comparators that were queried so far
+    private Map<CalendarComparator, Buckets> m_buckets = 
+        new HashMap<CalendarComparator, Buckets>();
+    
     private File                    m_file;
     private boolean                 m_isLoaded; // false, if created from scratch
     
@@ -352,6 +454,17 @@ public class LearnHistory
             start, end, passed, failed, skipped, relearned);
         
         m_summaries.add(sessionSummary);
+        
+        if (!m_buckets.isEmpty())
+        {
+            Calendar c = Calendar.getInstance();
+            c.setTime(start);
+            
+            for (Map.Entry<CalendarComparator, Buckets> entry : m_buckets.entrySet())
+            {
+                entry.getValue().add(entry.getKey().toValue(c), sessionSummary);
+            }
+        }
     }
     
     public void setIsLoaded(boolean loaded)
@@ -487,41 +600,21 @@ public class LearnHistory
     }
     
     /**
-     * @return a aggregated summary for given date and comparator.
+     * @return a aggregated summary for given date and comparator or
+     * <code>null</code> if there were no sessions at that date.
      */
     public SessionSummary getSummary(Date date, CalendarComparator comp)
     {
-        Calendar c1 = Calendar.getInstance();
-        c1.setTime(date);
+        Calendar c = Calendar.getInstance();
+        c.setTime(date);
         
-        Calendar c2 = Calendar.getInstance();
-        
-        int duration = 0;
-        int failed = 0; 
-        int passed = 0;
-        int relearned = 0;
-        int skipped = 0;
-        boolean found = false; 
-        
-        for (SessionSummary summary : m_summaries)
-        {
-            c2.setTime(summary.m_start);
-            
-            if (comp.toValue(c1) == comp.toValue(c2))
-            {
-                duration += summary.m_duration;
-                failed += summary.m_failed;
-                passed += summary.m_passed;
-                relearned += summary.m_relearned;
-                skipped += summary.m_skipped;
-                
-                found = true;
-            }
-        }
+        Buckets buckets = getBuckets(comp);
+        int i = buckets.indexOf(comp.toValue(c));
         
-        return !found ? null : 
-            new SessionSummary(date, date, duration, 
-                passed, failed, skipped, relearned);
+        return i < 0 ? null : 
+            new SessionSummary(date, date, buckets.m_duration[i], 
+                buckets.m_passed[i], buckets.m_failed[i], 
+                buckets.m_skipped[i], buckets.m_relearned[i]);
     }
 
     public SessionSummary getSessionsSummary()
@@ -553,6 +646,9 @@ public class LearnHistory
         if (!file.exists())
             return;
         
+        // rebuilt on demand after all sessions are loaded 
+        m_buckets.clear();
+        
         InputStream in = new FileInputStream(file);
         
         // get lesson tag
@@ -572,6 +668,32 @@ public class LearnHistory
         }
     }
 
+    /**
+     * @return the buckets of given comparator. They are built from all
+     * sessions when they are requested for the first time and kept up to date
+     * by {@link #addSummary} afterwards.
+     */
+    private Buckets getBuckets(CalendarComparator comp)
+    {
+        Buckets buckets = m_buckets.get(comp);
+        
+        if (buckets == null)
+        {
+            buckets = new Buckets();
+            Calendar c = Calendar.getInstance();
+            
+            for (SessionSummary summary : m_summaries)
+            {
+                c.setTime(summary.m_start);
+                buckets.add(comp.toValue(c), summary);
+            }
+            
+            m_buckets.put(comp, buckets);
+        }
+        
+        return buckets;
+    }
+
     public void save(File file) throws Exception
     {
         OutputStream out = new FileOutputStream(file);
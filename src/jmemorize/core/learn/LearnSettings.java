@@ -71,6 +71,10 @@ public class LearnSettings
     private int                  m_fixedExpirationHour;
     private int                  m_fixedExpirationMinute;
     
+    private boolean              m_adaptiveSchedulingEnabled;
+    private Scheduler            m_leitnerScheduler   = new LeitnerScheduler(this);
+    private Scheduler            m_adaptiveScheduler  = new AdaptiveScheduler(this);
+    
     private int                  m_limitTime;
     private boolean              m_retestFailedCards;
     private int                  m_sides;
@@ -314,6 +318,31 @@ public class LearnSettings
     {
         return m_fixedExpirationTimeEnabled;
     }
+    
+    /**
+     * @param enable <code>true</code> if the delays should be adapted to the
+     * review history of every card instead of using the schedule.
+     * 
+     * @see AdaptiveScheduler
+     */
+    public void setAdaptiveSchedulingEnabled(boolean enable)
+    {
+        m_adaptiveSchedulingEnabled = enable;
+    }
+    
+    public boolean isAdaptiveSchedulingEnabled()
+    {
+        return m_adaptiveSchedulingEnabled;
+    }
+    
+    /**
+     * @return the scheduler that decides when checked cards expire.
+     */
+    public Scheduler getScheduler()
+    {
+        return m_adaptiveSchedulingEnabled ? 
+            m_adaptiveScheduler : m_leitnerScheduler;
+    }
 
     /**
      * @return the correct expiration date according to the current schedule
@@ -328,8 +357,16 @@ public class LearnSettings
         int deckDelay = getSchedule()[Math.min(currentLevel, 9)];
         long millis = learnDate.getTime() + 60l * 1000l * deckDelay;
     
-        Date date = new Date(millis);
-        
+        return adjustExpirationDate(new Date(millis));
+    }
+    
+    /**
+     * @return the given expiration date or, if the fixed expiration time is
+     * enabled, the next moment after it that has the fixed expiration hour
+     * and minute.
+     */
+    public Date adjustExpirationDate(Date date)
+    {
         if (m_fixedExpirationTimeEnabled)
         {
             Calendar cal = Calendar.getInstance();
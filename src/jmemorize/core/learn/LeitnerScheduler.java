@@ -0,0 +1,45 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.learn;
+
+import java.util.Date;
+
+import jmemorize.core.Card;
+
+/**
+ * The classic scheduler that uses a fixed delay for every deck level as given
+ * by {@link LearnSettings#getSchedule()}.
+ */
+public class LeitnerScheduler implements Scheduler
+{
+    private LearnSettings m_settings;
+
+    public LeitnerScheduler(LearnSettings settings)
+    {
+        m_settings = settings;
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.learn.Scheduler
+     */
+    public Date getExpirationDate(Card card, Date testDate)
+    {
+        return m_settings.getExpirationDate(testDate, card.getLevel());
+    }
+}
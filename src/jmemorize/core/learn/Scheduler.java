@@ -0,0 +1,42 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.learn;
+
+import java.util.Date;
+
+import jmemorize.core.Card;
+
+/**
+ * A scheduler decides when a card that was passed in a learn session needs
+ * to be checked again. Failed cards are always unlearned again. The scheduler
+ * is called while the card is still on the level it had before it was
+ * checked, but after the review has been appended to the review log of the
+ * card.
+ *
+ * @see LearnSettings#getScheduler()
+ */
+public interface Scheduler
+{
+    /**
+     * @param card the card that was passed.
+     * @param testDate the moment that the card was learned.
+     * @return the date at which the card expires.
+     */
+    public Date getExpirationDate(Card card, Date testDate);
+}
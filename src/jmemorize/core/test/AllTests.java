@@ -28,9 +28,14 @@ public class AllTests
         TestSuite suite = new TestSuite("Test for jmemorize.core.test");
         //$JUnit-BEGIN$
         suite.addTestSuite(CardTest.class);
+        suite.addTestSuite(ReviewLogTest.class);
         suite.addTestSuite(CategoryTest.class);
         suite.addTestSuite(LessonProviderTest.class);
         suite.addTestSuite(FormattedTextTest.class);
+        suite.addTestSuite(SearchIndexTest.class);
+        suite.addTestSuite(XmlBuilderTest.class);
+        suite.addTestSuite(DateCodecTest.class);
+        suite.addTestSuite(LessonSnapshotTest.class);
         
         suite.addTestSuite(EquivalenceClassSetTest.class);
         suite.addTestSuite(EquivalenceClassSetTest2.class);
@@ -43,6 +48,7 @@ public class AllTests
         
         suite.addTestSuite(LocalizationTest.class);
         suite.addTestSuite(ImageRepositoryTest.class);
+        suite.addTestSuite(ImageCacheTest.class);
         suite.addTestSuite(CSVToolkitTest.class);
         //$JUnit-END$
         return suite;
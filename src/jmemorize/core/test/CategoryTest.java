@@ -18,6 +18,7 @@
  */
 package jmemorize.core.test;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.LinkedList;
@@ -303,6 +304,52 @@ public class CategoryTest extends TestCase implements CategoryObserver
         assertEquals(3, m_rootCard.getLevel());
     }
     
+    public void testCardIds()
+    {
+        assertEquals(-1, m_rootCard.getId());
+
+        m_rootCategory.addCard(m_rootCard);
+        m_childCategory.addCard(m_childCard);
+        assertEquals(0, m_rootCard.getId());
+        assertEquals(1, m_childCard.getId());
+        assertEquals(2, m_childCategory.getCardIdCount());
+
+        // ids stay the same when moving, raising and readding
+        Category.moveCard(m_rootCard, m_childCategory);
+        Category.raiseCardLevel(m_rootCard, new Date(), new Date());
+        m_childCategory.removeCard(m_childCard);
+        m_rootCategory.addCard(m_childCard);
+        assertEquals(0, m_rootCard.getId());
+        assertEquals(1, m_childCard.getId());
+
+        // cards of a category that is built separately get new ids
+        Category category = new Category("other");
+        Card card0 = new Card("front0", "back0");
+        Card card1 = new Card("front1", "back1");
+        category.addCard(card0);
+        category.addCard(card1);
+        assertEquals(1, card1.getId());
+
+        m_rootCategory.addCategoryChild(category);
+        assertEquals(2, card0.getId());
+        assertEquals(3, card1.getId());
+        assertEquals(4, m_rootCategory.getCardIdCount());
+
+        // the ids of removed cards are handed out again
+        m_rootCategory.removeCard(m_childCard);
+        category.remove();
+        Card card2 = new Card("front2", "back2");
+        m_rootCategory.addCard(card2);
+        assertEquals(1, card2.getId());
+        
+        m_rootCategory.addCard(m_childCard);
+        m_rootCategory.addCategoryChild(category);
+        assertEquals(2, m_childCard.getId());
+        assertEquals(3, card0.getId());
+        assertEquals(4, card1.getId());
+        assertEquals(5, m_rootCategory.getCardIdCount());
+    }
+
     public void testMoveCardEvents()
     {
         m_rootCategory.addCard(m_rootCard, 3);
@@ -461,6 +508,149 @@ public class CategoryTest extends TestCase implements CategoryObserver
         assertEquals(15, m_rootCard.getTestsTotal());
     }
     
+    public void testDueForecast()
+    {
+        Calendar now = Calendar.getInstance();
+        now.set(2008, 2, 10, 18, 0, 0);
+        
+        addExpiringCard(m_rootCategory, now, -3 * 24);   // expired, today
+        addExpiringCard(m_childCategory, now, 2);         // today
+        addExpiringCard(m_rootCategory, now, 8);          // tomorrow
+        addExpiringCard(m_childCategory, now, 26);        // tomorrow
+        addExpiringCard(m_childCategory, now, 2 * 24);    // in two days
+        addExpiringCard(m_rootCategory, now, 5 * 24);     // after forecast
+        m_rootCategory.addCard(new Card("unlearned", "card"));
+        
+        int[] forecast = m_rootCategory.getDueForecast(now.getTime(), 4);
+        assertEquals(4, forecast.length);
+        assertEquals(2, forecast[0]);
+        assertEquals(2, forecast[1]);
+        assertEquals(1, forecast[2]);
+        assertEquals(0, forecast[3]);
+        
+        forecast = m_childCategory.getDueForecast(now.getTime(), 2);
+        assertEquals(1, forecast[0]);
+        assertEquals(1, forecast[1]);
+        
+        assertEquals(0, m_rootCategory.getDueForecast(now.getTime(), 0).length);
+    }
+    
+    public void testDueForecastOfLargeCategory()
+    {
+        Calendar now = Calendar.getInstance();
+        now.set(2008, 2, 10, 18, 0, 0);
+        
+        // 200 cards for every hour of the next 29 days
+        for (int i = 0; i < 139200; i++)
+        {
+            Category category = i % 2 == 0 ? m_rootCategory : m_childCategory;
+            addExpiringCard(category, now, i % (29 * 24));
+        }
+        
+        int[] forecast = m_rootCategory.getDueForecast(now.getTime(), 30);
+        
+        int total = 0;
+        for (int i = 0; i < forecast.length; i++)
+            total += forecast[i];
+        
+        assertEquals(139200, total);
+        assertEquals(forecast[1], forecast[2]);
+    }
+    
+    public void testCardCounts()
+    {
+        Calendar future = Calendar.getInstance();
+        future.set(3000, 1, 1);
+
+        m_rootCategory.addCard(m_rootCard);
+        m_childCategory.addCard(m_childCard);
+        assertEquals(2, m_rootCategory.getCardCount());
+        assertEquals(1, m_childCategory.getCardCount());
+        assertEquals(2, m_rootCategory.getUnlearnedCardCount());
+
+        Category.raiseCardLevel(m_childCard, new Date(), future.getTime());
+        assertEquals(1, m_rootCategory.getCardCount(0));
+        assertEquals(1, m_rootCategory.getCardCount(1));
+        assertEquals(1, m_rootCategory.getLearnedCardCount(1));
+        assertEquals(0, m_rootCategory.getExpiredCardCount());
+
+        Category.raiseCardLevel(m_rootCard, new Date(), new Date());
+        assertEquals(1, m_rootCategory.getExpiredCardCount(1));
+        assertEquals(1, m_rootCategory.getLearnedCardCount());
+        assertEquals(1, m_rootCategory.getLearnableCardCount());
+        assertEquals(m_rootCategory.getCards(1).size(), m_rootCategory.getCardCount(1));
+
+        m_childCategory.remove();
+        assertEquals(1, m_rootCategory.getCardCount());
+        assertEquals(0, m_rootCategory.getLearnedCardCount());
+
+        m_rootCategory.addCategoryChild(m_childCategory);
+        assertEquals(2, m_rootCategory.getCardCount());
+
+        m_rootCategory.removeCard(m_childCard);
+        assertEquals(1, m_rootCategory.getCardCount());
+        assertEquals(0, m_childCategory.getCardCount());
+    }
+
+    public void testExpirationIndex()
+    {
+        Calendar future = Calendar.getInstance();
+        future.set(3000, 1, 1);
+
+        Calendar past = Calendar.getInstance();
+        past.set(2000, 1, 1);
+
+        m_rootCategory.addCard(m_rootCard);
+        m_childCategory.addCard(m_childCard);
+        assertTrue(m_rootCategory.getExpiredCards().isEmpty());
+        assertNull(m_rootCategory.getNextExpirationDate());
+
+        Category.raiseCardLevel(m_rootCard, new Date(), past.getTime());
+        Category.raiseCardLevel(m_childCard, new Date(), future.getTime());
+        Category.raiseCardLevel(m_childCard, new Date(), future.getTime());
+
+        List<Card> expired = m_rootCategory.getExpiredCards();
+        assertEquals(1, expired.size());
+        assertTrue(expired.contains(m_rootCard));
+        assertEquals(1, m_rootCategory.getExpiredCards(1).size());
+        assertEquals(0, m_rootCategory.getExpiredCards(2).size());
+        assertTrue(m_childCategory.getExpiredCards().isEmpty());
+
+        assertEquals(future.getTime(), m_rootCategory.getNextExpirationDate());
+        assertEquals(m_childCard, m_rootCategory.getNextExpiringCard());
+
+        Category.resetCardLevel(m_rootCard, new Date());
+        assertTrue(m_rootCategory.getExpiredCards().isEmpty());
+
+        m_childCategory.remove();
+        assertNull(m_rootCategory.getNextExpirationDate());
+    }
+
+    public void testCardView()
+    {
+        Category empty = m_childCategory.addCategoryChild(new Category("empty"));
+        Category grandChild = m_childCategory.addCategoryChild(new Category("grand child"));
+        Card grandChildCard = new Card("grand_child_card", "bla");
+
+        m_rootCategory.addCard(m_rootCard, 2);
+        m_childCategory.addCard(m_childCard, 0);
+        grandChild.addCard(grandChildCard, 2);
+
+        assertEquals(new ArrayList<Card>(m_rootCategory.getCardView()),
+            m_rootCategory.getCards());
+        assertEquals(new ArrayList<Card>(m_rootCategory.getCardView(2)),
+            m_rootCategory.getCards(2));
+        assertEquals(3, m_rootCategory.getCardView().size());
+        assertEquals(2, m_rootCategory.getCardView(2).size());
+        assertEquals(0, m_rootCategory.getCardView(1).size());
+        assertFalse(m_rootCategory.getCardView(1).iterator().hasNext());
+        assertFalse(empty.getCardView().iterator().hasNext());
+
+        m_rootCategory.removeCard(m_childCard);
+        assertEquals(new ArrayList<Card>(m_childCategory.getCardView()),
+            m_childCategory.getCards());
+    }
+
     public void testNumberOfDecks()
     {
         assertEquals(0, m_rootCategory.getNumberOfDecks());
@@ -472,6 +662,13 @@ public class CategoryTest extends TestCase implements CategoryObserver
         assertEquals(2, m_rootCategory.getNumberOfDecks());
     }
     
+    private void addExpiringCard(Category category, Calendar now, int hours)
+    {
+        Card card = new Card("front", "back");
+        card.setDateExpired(new Date(now.getTimeInMillis() + hours * 60L * 60 * 1000));
+        category.addCard(card, 1);
+    }
+    
     /*
      * @see jmemorize.core.CategoryObserver
      */
@@ -0,0 +1,81 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+import jmemorize.core.io.DateCodec;
+import junit.framework.TestCase;
+
+public class DateCodecTest extends TestCase
+{
+    public void testFormat()
+    {
+        assertEquals("1970-01-01T00:00:00.000Z", DateCodec.format(new Date(0)));
+        assertEquals("2008-02-29T23:59:59.999Z",
+            DateCodec.format(new Date(1204329599999L)));
+    }
+
+    public void testParseIso() throws ParseException
+    {
+        assertEquals(new Date(0), DateCodec.parse("1970-01-01T00:00:00Z"));
+        assertEquals(new Date(1204329599999L),
+            DateCodec.parse("2008-02-29T23:59:59.999Z"));
+    }
+
+    public void testParseEpochMillis() throws ParseException
+    {
+        assertEquals(new Date(1204329599999L), DateCodec.parse("1204329599999"));
+    }
+
+    public void testParseLegacy() throws ParseException
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2006, Calendar.NOVEMBER, 23, 16, 52, 30);
+        assertEquals(calendar.getTime(), DateCodec.parse("23-Nov-2006 16:52:30"));
+
+        calendar.set(2006, Calendar.JULY, 3, 3, 18, 21);
+        assertEquals(calendar.getTime(), DateCodec.parse("3-Jul-2006 03:18:21"));
+    }
+
+    public void testParseFormatOfDateFormat() throws ParseException
+    {
+        DateFormat format = DateFormat.getDateTimeInstance(
+            DateFormat.MEDIUM, DateFormat.MEDIUM, Locale.UK);
+
+        Date date = new Date(1204329599000L);
+        assertEquals(date, DateCodec.parse(format.format(date)));
+    }
+
+    public void testFormatParseRoundTrip() throws ParseException
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++)
+        {
+            Date date = new Date(random.nextLong() % 4000000000000L);
+            assertEquals(date, DateCodec.parse(DateCodec.format(date)));
+        }
+    }
+}
@@ -102,6 +102,48 @@ public class EquivalenceClassSetTest extends TestCase
         assertTrue(interSet.size() == mod3EqvSet.size());
     }
 
+    public void testManyClasses()
+    {
+        Comparator div10cmp = new Comparator()
+        {
+            public int compare(Object arg0, Object arg1)
+            {
+                return ((Integer)arg0).intValue() / 10 - ((Integer)arg1).intValue() / 10;
+            }
+        };
+
+        List values = new ArrayList();
+        for (int i = 0; i < 5000; i++)
+        {
+            values.add(new Integer(i));
+        }
+        Collections.shuffle(values);
+
+        EquivalenceClassSet set = new EquivalenceClassSet(div10cmp);
+        assertTrue(set.addAll(values));
+        assertFalse(set.addAll(values));
+        assertEquals(5000, set.size());
+
+        Iterator loopIter = set.loopIterator();
+        int lastClass = 0;
+        for (int i = 0; i < 5000; i++)
+        {
+            int eqvClass = ((Integer)loopIter.next()).intValue() / 10;
+            assertTrue(eqvClass == lastClass || eqvClass == lastClass + 1);
+            lastClass = eqvClass;
+        }
+
+        Collections.shuffle(values);
+        for (int i = 0; i < values.size(); i++)
+        {
+            assertTrue(set.contains(values.get(i)));
+            assertTrue(set.remove(values.get(i)));
+            assertFalse(set.contains(values.get(i)));
+        }
+        assertEquals(0, set.size());
+        assertFalse(loopIter.hasNext());
+    }
+
     protected void internalSanityTestLoopIterator(int iters, boolean isShuffle)
     {
         if (!isShuffle)
@@ -435,4 +477,26 @@ public class EquivalenceClassSetTest extends TestCase
         interSet.retainAll(mod3EqvSet);
         assertTrue(interSet.size() == 0);
     }
+    
+    public void testPeekLoopIterator()
+    {
+        mod3EqvSet.setShuffleEquivalenceClasses(false);
+        Iterator loopIter = mod3EqvSet.loopIterator();
+        
+        List sequence = new ArrayList();
+        for (int i = 0; i < 2 * mod3EqvSet.size(); i++)
+        {
+            sequence.add(loopIter.next());
+        }
+        
+        // peeking must not advance the loop iterator, also when recycling
+        mod3EqvSet.resetLoopIterator();
+        for (int i = 0; i < mod3EqvSet.size(); i++)
+        {
+            assertEquals(sequence.subList(i, i + 3), mod3EqvSet.peekLoopIterator(3));
+            assertEquals(sequence.get(i), loopIter.next());
+        }
+        
+        assertEquals(mod3EqvSet.size(), mod3EqvSet.peekLoopIterator(100).size());
+    }
 }
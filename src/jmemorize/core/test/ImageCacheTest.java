@@ -0,0 +1,100 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.awt.image.BufferedImage;
+
+import javax.swing.ImageIcon;
+
+import jmemorize.core.ImageCache;
+import junit.framework.TestCase;
+
+public class ImageCacheTest extends TestCase
+{
+    private static final long IMAGE_SIZE = 10 * 10 * 4;
+    
+    private ImageCache m_cache = new ImageCache(3 * IMAGE_SIZE);
+    
+    public void testGetCountsHitsAndMisses()
+    {
+        ImageIcon icon = createIcon();
+        m_cache.put("a", icon);
+        
+        assertSame(icon, m_cache.get("a"));
+        assertNull(m_cache.get("b"));
+        
+        assertEquals(1, m_cache.getHits());
+        assertEquals(1, m_cache.getMisses());
+        assertEquals(IMAGE_SIZE, m_cache.getBytes());
+    }
+    
+    public void testLeastRecentlyUsedImageIsEvicted()
+    {
+        m_cache.put("a", createIcon());
+        m_cache.put("b", createIcon());
+        m_cache.put("c", createIcon());
+        m_cache.get("a");
+        
+        m_cache.put("d", createIcon());
+        
+        assertTrue(m_cache.contains("a"));
+        assertFalse(m_cache.contains("b"));
+        assertTrue(m_cache.contains("c"));
+        assertTrue(m_cache.contains("d"));
+        assertEquals(1, m_cache.getEvictions());
+        assertEquals(3 * IMAGE_SIZE, m_cache.getBytes());
+    }
+    
+    public void testReplacingImageDoesntCountTwice()
+    {
+        m_cache.put("a", createIcon());
+        m_cache.put("a", createIcon());
+        
+        assertEquals(1, m_cache.size());
+        assertEquals(IMAGE_SIZE, m_cache.getBytes());
+    }
+    
+    public void testTooLargeImageIsNotCached()
+    {
+        m_cache.put("a", createIcon());
+        m_cache.put("big", new ImageIcon(
+            new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB)));
+        
+        assertFalse(m_cache.contains("big"));
+        assertTrue(m_cache.contains("a"));
+        assertEquals(0, m_cache.getEvictions());
+    }
+    
+    public void testShrinkingEvictsImages()
+    {
+        m_cache.put("a", createIcon());
+        m_cache.put("b", createIcon());
+        
+        m_cache.setMaxBytes(IMAGE_SIZE);
+        
+        assertFalse(m_cache.contains("a"));
+        assertTrue(m_cache.contains("b"));
+        assertEquals(IMAGE_SIZE, m_cache.getBytes());
+    }
+    
+    private ImageIcon createIcon()
+    {
+        return new ImageIcon(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+    }
+}
@@ -18,14 +18,29 @@
  */
 package jmemorize.core.test;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+import jmemorize.core.Card;
 import jmemorize.core.ImageRepository;
+import jmemorize.core.Lesson;
 import jmemorize.core.Main;
+import jmemorize.core.ThumbnailCache;
+import jmemorize.core.ImageRepository.ImageItem;
+import jmemorize.core.io.LessonSnapshot;
 import jmemorize.core.io.XmlBuilder;
 import junit.framework.TestCase;
 
@@ -56,7 +71,8 @@ public class ImageRepositoryTest extends TestCase
         String id2 = addImage("test.gif");
         assertNotNull(id2);
         
-//        assertEquals(id1, id2); TODO!
+        assertEquals(id1, id2);
+        assertEquals(1, m_ir.getImageItems().size());
     }
     
     public void testIdOfSingleImage() throws IOException
@@ -139,6 +155,66 @@ public class ImageRepositoryTest extends TestCase
         assertNull(m_ir.getImage("more/test.gif"));
     }
     
+    public void testDecodedImagesAreCached() throws IOException
+    {
+        String id = addImage("test.gif");
+        m_ir.getImageCache().resetCounters();
+        
+        ImageIcon icon = m_ir.getImage(id);
+        assertSame(icon, m_ir.getImage(id));
+        assertEquals(1, m_ir.getImageCache().getHits());
+        assertEquals(1, m_ir.getImageCache().getMisses());
+        
+        m_ir.clear();
+        assertEquals(0, m_ir.getImageCache().size());
+        assertNull(m_ir.getImage(id));
+    }
+    
+    public void testScaledImagesAreCached() throws IOException
+    {
+        String id = addImage("test.png");
+        assertNull(m_ir.getCachedScaledImage(id, 10, 5));
+        
+        ImageIcon scaled = m_ir.getScaledImage(id, 10, 5);
+        assertEquals(10, scaled.getIconWidth());
+        assertEquals(5, scaled.getIconHeight());
+        assertSame(scaled, m_ir.getCachedScaledImage(id, 10, 5));
+        assertNull(m_ir.getCachedScaledImage(id, 5, 10));
+    }
+    
+    public void testThumbnailIsWrittenOnce() throws IOException
+    {
+        addImage("test.png");
+        ImageItem item = m_ir.getImageItems().iterator().next();
+        ThumbnailCache cache = new ThumbnailCache(TEST_DIR, 1024 * 1024);
+        
+        File thumbnail = cache.getThumbnail(item);
+        assertTrue(thumbnail.isFile());
+        assertEquals(thumbnail, cache.getFile(item));
+        
+        BufferedImage image = ImageIO.read(thumbnail);
+        assertTrue(image.getWidth() <= ThumbnailCache.SIZE);
+        assertTrue(image.getHeight() <= ThumbnailCache.SIZE);
+        
+        long modified = thumbnail.lastModified();
+        assertEquals(thumbnail, cache.getThumbnail(item));
+        assertEquals(modified, thumbnail.lastModified());
+        assertEquals(1, TEST_DIR.listFiles().length);
+    }
+    
+    public void testOldestThumbnailsAreDeleted() throws IOException
+    {
+        addImage("test.png");
+        addImage("test.gif");
+        Iterator<ImageItem> items = m_ir.getImageItems().iterator();
+        ThumbnailCache cache = new ThumbnailCache(TEST_DIR, 1);
+        
+        File thumbnail0 = cache.getThumbnail(items.next());
+        File thumbnail1 = cache.getThumbnail(items.next());
+        assertFalse(thumbnail0.exists());
+        assertTrue(thumbnail1.isFile());
+    }
+    
     public void testSaveImagesToDisk() throws IOException
     {
         addImage("test.gif");
@@ -165,6 +241,108 @@ public class ImageRepositoryTest extends TestCase
         assertTrue(files[0].toString().endsWith(".png"));
     }
     
+    public void testImagesOfZippedLessonAreReadOnDemand() throws Exception
+    {
+        String id = addImage("test.png");
+        byte[] bytes = m_ir.getImageItems().iterator().next().getBytes();
+        
+        Lesson lesson = new Lesson(false);
+        Card card = new Card("front", "back");
+        card.getFrontSide().setImages(Collections.singletonList(id));
+        lesson.getRootCategory().addCard(card);
+        
+        File file = new File("test_images.jml");
+        File file2 = new File("test_images2.jml");
+        try
+        {
+            XmlBuilder.saveAsXMLFile(file, lesson);
+            m_ir.clear();
+            
+            XmlBuilder.loadFromXMLFile(file, new Lesson(false));
+            ImageItem item = m_ir.getImageItems().iterator().next();
+            assertEquals(id, item.getId());
+            assertEquals(file, item.getZipFile());
+            assertTrue(Arrays.equals(bytes, item.getBytes()));
+            assertNotNull(m_ir.getImage(id));
+            
+            // images are copied from the zip when saving to another file
+            // and are read from that file afterwards
+            XmlBuilder.saveAsXMLFile(file2, lesson);
+            assertEquals(file2, item.getZipFile());
+            assertTrue(file.delete());
+            assertTrue(Arrays.equals(bytes, item.getBytes()));
+            m_ir.clear();
+            
+            XmlBuilder.loadFromXMLFile(file2, new Lesson(false));
+            item = m_ir.getImageItems().iterator().next();
+            assertTrue(Arrays.equals(bytes, item.getBytes()));
+            
+            // and can still be read after the lesson file got replaced
+            Main.getInstance().saveLesson(lesson, file2);
+            assertEquals(file2, item.getZipFile());
+            assertTrue(Arrays.equals(bytes, item.getBytes()));
+        }
+        finally
+        {
+            file.delete();
+            file2.delete();
+            new File(file2.getPath() + "~").delete();
+            LessonSnapshot.getSnapshotFile(file2).delete();
+        }
+    }
+    
+    public void testDuplicatesOfZippedImagesAreReplaced() throws Exception
+    {
+        // a lesson file that contains the same image twice
+        File file = new File("test_duplicates.jml");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        String[] names = {"a.gif", "b.gif", "c.png"};
+        String[] images = {"test.gif", "test.gif", "test.png"};
+        for (int i = 0; i < names.length; i++)
+        {
+            out.putNextEntry(new ZipEntry("images" + File.separator + names[i]));
+            FileInputStream in = new FileInputStream(
+                "test/fixtures/test-images/" + images[i]);
+            
+            byte[] buffer = new byte[1024];
+            int numRead;
+            while ((numRead = in.read(buffer)) >= 0)
+                out.write(buffer, 0, numRead);
+            
+            in.close();
+            out.closeEntry();
+        }
+        out.close();
+        
+        Lesson lesson = new Lesson(false);
+        Card card = new Card("front", "back");
+        card.getFrontSide().setImages(Arrays.asList(new String[] {"a.gif", "b.gif"}));
+        card.getBackSide().setImages(Arrays.asList(new String[] {"b.gif", "c.png"}));
+        lesson.getRootCategory().addCard(card);
+        
+        try
+        {
+            XmlBuilder.loadImageRepository(file, lesson);
+            
+            assertEquals(2, m_ir.getImageItems().size());
+            assertEquals("a.gif", m_ir.getCanonicalId("b.gif"));
+            assertNotNull(m_ir.getImage("b.gif"));
+            
+            assertEquals(Arrays.asList(new String[] {"a.gif"}), 
+                card.getFrontSide().getImages());
+            assertEquals(Arrays.asList(new String[] {"a.gif", "c.png"}), 
+                card.getBackSide().getImages());
+            
+            // new images must not get the ID of a duplicate
+            assertEquals("b_0.gif", m_ir.addImage(new FileInputStream(
+                "test/fixtures/test-images/more/test.gif"), "b.gif"));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+    
     private void delDir(File dir)
     {
         String[] entries = dir.list();
@@ -173,7 +351,7 @@ public class ImageRepositoryTest extends TestCase
         {
             for (int i = 0; i < entries.length; i++)
             {
-                delDir(new File(entries[i]));
+                delDir(new File(dir, entries[i]));
             }
         }
         
@@ -211,6 +211,36 @@ public class LearnHistoryTest extends TestCase
         assertSession(6, 3, 1, 2, summary);
     }
     
+    public void testSessionSummaryUpdatedAfterQuery()
+    {
+        m_history.addSummary(m_date0, m_date1, 2, 0, 1, 1);
+        assertNull(m_history.getSummary(createDate(2006, 14, 30), LearnHistory.DATE_COMP));
+        assertSession(2, 0, 1, 1, m_history.getSummary(m_date0, LearnHistory.DATE_COMP));
+        
+        // sessions that are added later are included, also when out of order
+        m_history.addSummary(m_date1, m_date2, 4, 3, 0, 1);
+        m_history.addSummary(createDate(2006, 14, 30), createDate(2006, 14, 50), 1, 1, 1, 1);
+        
+        assertSession(6, 3, 1, 2, m_history.getSummary(m_date0, LearnHistory.DATE_COMP));
+        assertSession(1, 1, 1, 1, m_history.getSummary(
+            createDate(2006, 15, 0), LearnHistory.DATE_COMP));
+    }
+    
+    public void testSessionSummaryByMonthAndYear()
+    {
+        m_history.addSummary(m_date0, m_date1, 2, 0, 1, 1);
+        m_history.addSummary(createDate(2007, 3, 1, 14, 0), 
+            createDate(2007, 3, 1, 14, 20), 4, 3, 0, 1);
+        m_history.addSummary(createDate(2008, 1, 1, 14, 0), 
+            createDate(2008, 1, 1, 14, 20), 1, 1, 1, 1);
+        
+        assertSession(2, 0, 1, 1, m_history.getSummary(m_date0, LearnHistory.MONTH_COMP));
+        assertSession(6, 3, 1, 2, m_history.getSummary(m_date0, LearnHistory.YEAR_COMP));
+        assertSession(1, 1, 1, 1, m_history.getSummary(
+            createDate(2008, 1, 20, 9, 0), LearnHistory.MONTH_COMP));
+        assertEquals(40, m_history.getSummary(m_date0, LearnHistory.YEAR_COMP).getDuration());
+    }
+    
     private void assertSession(int passed, int failed, int skipped, 
         int relearned, SessionSummary summary)
     {
@@ -221,9 +251,19 @@ public class LearnHistoryTest extends TestCase
     }
     
     private Date createDate(int hour, int minute)
+    {
+        return createDate(2007, hour, minute);
+    }
+    
+    private Date createDate(int year, int hour, int minute)
+    {
+        return createDate(year, 1, 1, hour, minute);
+    }
+    
+    private Date createDate(int year, int month, int day, int hour, int minute)
     {
         Calendar calendar = Calendar.getInstance();
-        calendar.set(2007, 1, 1, hour, minute);
+        calendar.set(year, month, day, hour, minute);
         
         return calendar.getTime();
     }
@@ -19,8 +19,10 @@
 package jmemorize.core.test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 
 import jmemorize.core.Card;
 import jmemorize.core.Category;
@@ -172,6 +174,31 @@ public class LearnSessionTest extends TestCase
         TestHelper.assertSet(new Card[]{card0}, m_session.getSkippedCards());
     }
     
+    public void testCheckedCardsAreOrderedByLastViewing()
+    {
+        m_session.startLearning();
+
+        Card card0 = m_session.getCurrentCard();
+        m_session.cardSkipped();
+        Card card1 = m_session.getCurrentCard();
+        m_session.cardSkipped();
+        Card card2 = m_session.getCurrentCard();
+        assertEquals(Arrays.asList(new Card[]{card0, card1, card2}),
+            m_session.getCheckedCards());
+
+        // a card that is shown again moves to the end
+        m_session.cardSkipped();
+        Card card = m_session.getCurrentCard();
+        List<Card> cards = new ArrayList<Card>(Arrays.asList(
+            new Card[]{card0, card1, card2}));
+        cards.remove(card);
+        cards.add(card);
+        assertEquals(cards, m_session.getCheckedCards());
+
+        m_category.removeCard(cards.get(0));
+        assertEquals(cards.subList(1, 3), m_session.getCheckedCards());
+    }
+
     public void testSkippedUnlearnedCardsAreReshownAfterExpiredCards()
     {
         Category.raiseCardLevel(m_card1, new Date(), new Date());
@@ -277,6 +304,47 @@ public class LearnSessionTest extends TestCase
         return calendar.getTime();
     }
     
+    public void testShuffledCardsGetOtherLevel()
+    {
+        Date past = new Date(System.currentTimeMillis() - Card.ONE_DAY);
+        Category.raiseCardLevel(m_card0, past, past);
+        Category.raiseCardLevel(m_card0, past, past);
+        Category.raiseCardLevel(m_card1, past, past);
+        Category.raiseCardLevel(m_card1, past, past);
+        Category.raiseCardLevel(m_card1, past, past);
+        m_category.removeCard(m_card2);
+        
+        // all cards are shuffled between level 2 and 3
+        m_settings.setShuffleRatio(1);
+        for (int i = 0; i < 10; i++)
+        {
+            DefaultLearnSession session = createSession();
+            session.startLearning();
+            
+            int level = session.getCurrentCard().getLevel();
+            assertEquals(level == 2 ? 3 : 2, session.getCurrentShuffleLevel());
+        }
+    }
+    
+    public void testCardLimitSelectsFirstCards()
+    {
+        Category.raiseCardLevel(m_card1, new Date(), new Date());
+        m_settings.setCardLimitEnabled(true);
+        m_settings.setCardLimit(2);
+        
+        m_session = createSession();
+        TestHelper.assertSet(new Card[]{m_card0, m_card1, m_card2}, m_session.getCardsLeft());
+        
+        m_session.startLearning();
+        TestHelper.assertSet(new Card[]{m_card0, m_card2}, m_session.getCardsLeft());
+        
+        // skipped cards are replaced by cards from the reserve
+        Card card = m_session.getCurrentCard();
+        m_session.cardSkipped();
+        assertTrue(m_session.getCardsLeft().contains(m_card1));
+        assertFalse(m_session.getCardsLeft().contains(card));
+    }
+    
     private DefaultLearnSession createSession()
     {
         return new DefaultLearnSession(m_category, m_settings, 
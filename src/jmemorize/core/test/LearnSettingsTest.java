@@ -3,7 +3,11 @@ package jmemorize.core.test;
 import java.util.Calendar;
 import java.util.Date;
 
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.learn.AdaptiveScheduler;
 import jmemorize.core.learn.LearnSettings;
+import jmemorize.core.learn.Scheduler;
 import jmemorize.core.learn.LearnSettings.SchedulePreset;
 import junit.framework.TestCase;
 
@@ -68,6 +72,77 @@ public class LearnSettingsTest extends TestCase
         assertCalendar(2007, 5, 4, 20, 0, expirationDate);
     }
     
+    public void testAdaptiveSchedulerGrowsDelays()
+    {
+        m_settings.setAdaptiveSchedulingEnabled(true);
+        Scheduler scheduler = m_settings.getScheduler();
+        
+        Card card = new Card("front", "back");
+        long time = m_testDate.getTime();
+        
+        card.addReview(time, true, false, 1000, 0, 1);
+        assertCalendar(2007, 5, 5, 13, 20, scheduler.getExpirationDate(card, m_testDate));
+        
+        card.addReview(time, true, false, 1000, 1, 2);
+        assertCalendar(2007, 5, 10, 13, 20, scheduler.getExpirationDate(card, m_testDate));
+        
+        // the fast answers raised the ease factor from 2.5 to 2.8
+        card.addReview(time + 6 * Card.ONE_DAY, true, false, 1000, 2, 3);
+        assertEquals(6 * Card.ONE_DAY * 2.8, 
+            ((AdaptiveScheduler)scheduler).getDelay(card), 60 * 1000);
+    }
+    
+    public void testAdaptiveSchedulerUsesAnswerQuality()
+    {
+        AdaptiveScheduler scheduler = new AdaptiveScheduler(m_settings);
+        long time = m_testDate.getTime();
+        
+        Card fastCard = new Card("front", "back");
+        Card slowCard = new Card("front", "back");
+        for (int i = 0; i < 4; i++)
+        {
+            fastCard.addReview(time + i * Card.ONE_DAY, true, false, 1000, i, i + 1);
+            slowCard.addReview(time + i * Card.ONE_DAY, true, false, 60000, i, i + 1);
+        }
+        
+        assertTrue(scheduler.getDelay(fastCard) > scheduler.getDelay(slowCard));
+    }
+    
+    public void testAdaptiveSchedulerRestartsFailedCards()
+    {
+        AdaptiveScheduler scheduler = new AdaptiveScheduler(m_settings);
+        long time = m_testDate.getTime();
+        
+        Card card = new Card("front", "back");
+        card.addReview(time, true, false, 1000, 0, 1);
+        card.addReview(time, true, false, 1000, 1, 2);
+        card.addReview(time, false, false, 1000, 2, 0);
+        card.addReview(time, true, false, 1000, 0, 1);
+        
+        assertEquals(AdaptiveScheduler.FIRST_DELAY, scheduler.getDelay(card));
+    }
+    
+    public void testAdaptiveSchedulerWithoutReviewLog()
+    {
+        AdaptiveScheduler scheduler = new AdaptiveScheduler(m_settings);
+        
+        Category category = new Category("test");
+        Card card = new Card("front", "back");
+        category.addCard(card, 2);
+        
+        assertEquals((long)(AdaptiveScheduler.SECOND_DELAY * AdaptiveScheduler.INITIAL_EASE), 
+            scheduler.getDelay(card));
+    }
+    
+    public void testLeitnerSchedulerIsDefault()
+    {
+        Card card = new Card("front", "back");
+        
+        assertFalse(m_settings.isAdaptiveSchedulingEnabled());
+        assertEquals(m_settings.getExpirationDate(m_testDate, 0), 
+            m_settings.getScheduler().getExpirationDate(card, m_testDate));
+    }
+    
     private void assertCalendar(int year, int month, int day, int hour, 
         int minute, Date date)
     {
@@ -0,0 +1,121 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import jmemorize.core.Lesson;
+import jmemorize.core.io.LessonSnapshot;
+import jmemorize.core.io.XmlBuilder;
+import junit.framework.TestCase;
+
+public class LessonSnapshotTest extends TestCase
+{
+    private File   m_file;
+    private Lesson m_lesson;
+
+    protected void setUp() throws Exception
+    {
+        m_lesson = new Lesson(false);
+        XmlBuilder.loadFromXMLFile(new File("test/fixtures/simple_de.jml"), m_lesson);
+
+        m_file = new File("test_snapshot.jml");
+        XmlBuilder.saveAsXMLFile(m_file, m_lesson);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        LessonSnapshot.getSnapshotFile(m_file).delete();
+        m_file.delete();
+    }
+
+    public void testSaveAndLoad() throws Exception
+    {
+        LessonSnapshot.save(m_file, m_lesson);
+        assertTrue(LessonSnapshot.isUpToDate(m_file));
+
+        Lesson lesson = new Lesson(false);
+        LessonSnapshot.load(m_file, lesson);
+
+        TestHelper.assertEqualCategories(m_lesson.getRootCategory(),
+            lesson.getRootCategory());
+        assertEquals(m_lesson.getLearnHistory().getSummaries(),
+            lesson.getLearnHistory().getSummaries());
+    }
+
+    public void testNoSnapshot()
+    {
+        assertFalse(LessonSnapshot.isUpToDate(m_file));
+    }
+
+    public void testOutdatedSnapshot() throws Exception
+    {
+        LessonSnapshot.save(m_file, m_lesson);
+
+        // the lesson file was changed by someone else
+        FileOutputStream out = new FileOutputStream(m_file, true);
+        out.write(0);
+        out.close();
+
+        assertFalse(LessonSnapshot.isUpToDate(m_file));
+        try
+        {
+            LessonSnapshot.load(m_file, new Lesson(false));
+            fail();
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    public void testCorruptedSnapshot() throws Exception
+    {
+        LessonSnapshot.save(m_file, m_lesson);
+        File file = LessonSnapshot.getSnapshotFile(m_file);
+        
+        byte[] header = new byte[24];
+        FileInputStream in = new FileInputStream(file);
+        in.read(header);
+        in.close();
+        
+        // an up to date header that is followed by a wrong number of decks
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.write(header);
+        out.writeInt(0);
+        out.writeInt(Integer.MAX_VALUE);
+        out.close();
+        file.setLastModified(m_file.lastModified());
+        
+        assertTrue(LessonSnapshot.isUpToDate(m_file));
+        try
+        {
+            LessonSnapshot.load(m_file, new Lesson(false));
+            fail();
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.ReviewLog;
+import jmemorize.core.io.LessonSnapshot;
+import jmemorize.core.io.XmlBuilder;
+import jmemorize.core.learn.DefaultLearnSession;
+import jmemorize.core.learn.LearnSession;
+import jmemorize.core.learn.LearnSettings;
+import jmemorize.core.test.stubs.LearnSessionProviderStub;
+import jmemorize.util.Base64;
+import junit.framework.TestCase;
+
+public class ReviewLogTest extends TestCase
+{
+    public void testAddAndGet()
+    {
+        ReviewLog log = new ReviewLog();
+        for (int i = 0; i < 100; i++)
+        {
+            log.add(1000L * i, i % 3 == 0, i % 2 == 0, 10 * i, i % 5, i % 7);
+        }
+
+        assertEquals(100, log.size());
+        assertEquals(34, log.getPassedCount());
+
+        assertEquals(57000, log.getTime(57));
+        assertTrue(log.isPassed(57));
+        assertFalse(log.isFlipped(57));
+        assertEquals(570, log.getResponseTime(57));
+        assertEquals(2, log.getLevelBefore(57));
+        assertEquals(1, log.getLevelAfter(57));
+    }
+
+    public void testEncodeAndDecode()
+    {
+        ReviewLog log = new ReviewLog();
+        log.add(1204000000000L, true, false, 2500, 0, 1);
+        log.add(1204000060000L, false, true, 400000, 1, 0);
+        log.add(1203000000000L, true, true, 0, 0, 1); // clock was changed
+
+        assertEquals(log, ReviewLog.decode(log.encode()));
+        assertEquals(new ReviewLog(), ReviewLog.decode(new ReviewLog().encode()));
+    }
+
+    public void testDecodeCorrupted()
+    {
+        ReviewLog log = new ReviewLog();
+        log.add(1204000000000L, true, false, 2500, 0, 1);
+
+        byte[] bytes = log.toByteArray();
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        try
+        {
+            ReviewLog.decode(Base64.encode(truncated));
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    public void testBase64()
+    {
+        for (int length = 0; length < 10; length++)
+        {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+                bytes[i] = (byte)(i * 87 - 128);
+
+            String text = Base64.encode(bytes);
+            assertEquals(0, text.length() % 4);
+
+            byte[] decoded = Base64.decode(text);
+            assertEquals(length, decoded.length);
+            for (int i = 0; i < length; i++)
+                assertEquals(bytes[i], decoded[i]);
+        }
+
+        assertEquals("TWFu", Base64.encode("Man".getBytes())); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("TWE=", Base64.encode("Ma".getBytes()));  //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    public void testCardCheckedAddsReview()
+    {
+        Category category = new Category("test");
+        Card card = new Card("front", "back");
+        category.addCard(card);
+
+        LearnSettings settings = new LearnSettings();
+        LearnSession session = new DefaultLearnSession(category, settings,
+            new ArrayList<Card>(), true, true, new LearnSessionProviderStub());
+
+        session.startLearning();
+        session.cardChecked(true, false);
+
+        ReviewLog log = card.getReviewLog();
+        assertEquals(1, log.size());
+        assertTrue(log.isPassed(0));
+        assertFalse(log.isFlipped(0));
+        assertEquals(0, log.getLevelBefore(0));
+        assertEquals(1, log.getLevelAfter(0));
+        assertTrue(log.getResponseTime(0) >= 0);
+    }
+
+    public void testSaveAndLoad() throws Exception
+    {
+        Lesson lesson = new Lesson(false);
+        Category root = lesson.getRootCategory();
+        for (int i = 0; i < 10; i++)
+        {
+            Card card = new Card("front " + i, "back " + i);
+            for (int j = 0; j < i; j++)
+                card.addReview(1204000000000L + j * Card.ONE_DAY, j % 2 == 0, false, 1500, j, j + 1);
+
+            root.addCard(card);
+        }
+
+        File file = new File("test_reviews.jml");
+        try
+        {
+            XmlBuilder.saveAsXMLFile(file, lesson);
+
+            Lesson domLesson = new Lesson(false);
+            XmlBuilder.loadFromXMLFile(file, domLesson, false);
+            TestHelper.assertEqualCategories(root, domLesson.getRootCategory());
+
+            Lesson streamLesson = new Lesson(false);
+            XmlBuilder.loadFromXMLFile(file, streamLesson, true);
+            TestHelper.assertEqualCategories(root, streamLesson.getRootCategory());
+
+            LessonSnapshot.save(file, lesson);
+            Lesson snapshotLesson = new Lesson(false);
+            LessonSnapshot.load(file, snapshotLesson);
+            TestHelper.assertEqualCategories(root, snapshotLesson.getRootCategory());
+        }
+        finally
+        {
+            LessonSnapshot.getSnapshotFile(file).delete();
+            file.delete();
+        }
+    }
+}
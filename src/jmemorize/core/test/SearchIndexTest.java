@@ -0,0 +1,224 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.SearchIndex;
+import jmemorize.core.SearchTool;
+import junit.framework.TestCase;
+
+public class SearchIndexTest extends TestCase
+{
+    private Category    m_rootCategory;
+    private Category    m_childCategory;
+    private Card        m_card0;
+    private Card        m_card1;
+    private Card        m_card2;
+    private SearchIndex m_index;
+
+    protected void setUp() throws Exception
+    {
+        m_rootCategory = new Category("root");
+        m_childCategory = m_rootCategory.addCategoryChild(new Category("child"));
+
+        m_card0 = new Card("Hello World", "Hallo Welt");
+        m_card1 = new Card("Good Morning", "Guten Morgen");
+        m_card2 = new Card("world peace", "Weltfrieden");
+
+        m_rootCategory.addCard(m_card0);
+        m_rootCategory.addCard(m_card1);
+        m_childCategory.addCard(m_card2);
+
+        m_index = new SearchIndex(m_rootCategory);
+    }
+
+    public void testSearchSides()
+    {
+        assertFound(m_index.search("world", SearchTool.BOTH_SIDES, false,
+            m_rootCategory), new Card[] {m_card0, m_card2});
+        assertFound(m_index.search("welt", SearchTool.FRONT_SIDE, false,
+            m_rootCategory), new Card[] {});
+        assertFound(m_index.search("welt", SearchTool.FLIP_SIDE, false,
+            m_rootCategory), new Card[] {m_card0, m_card2});
+        assertFound(m_index.search("orn", SearchTool.BOTH_SIDES, false,
+            m_rootCategory), new Card[] {m_card1});
+    }
+
+    public void testSearchMatchCase()
+    {
+        assertFound(m_index.search("World", SearchTool.BOTH_SIDES, true,
+            m_rootCategory), new Card[] {m_card0});
+        assertFound(m_index.search("World", SearchTool.BOTH_SIDES, false,
+            m_rootCategory), new Card[] {m_card0, m_card2});
+    }
+
+    public void testSearchShortText()
+    {
+        assertFound(m_index.search("o", SearchTool.FRONT_SIDE, false,
+            m_rootCategory), new Card[] {m_card0, m_card1, m_card2});
+        assertFound(m_index.search("gu", SearchTool.FLIP_SIDE, false,
+            m_rootCategory), new Card[] {m_card1});
+    }
+
+    public void testSearchCategory()
+    {
+        assertFound(m_index.search("world", SearchTool.BOTH_SIDES, false,
+            m_childCategory), new Card[] {m_card2});
+    }
+
+    public void testSearchInChunks()
+    {
+        for (int i = 0; i < 10; i++)
+            m_rootCategory.addCard(new Card("world " + i, "back"));
+
+        final List<List<Card>> chunks = new ArrayList<List<Card>>();
+        SearchIndex.SearchObserver observer = new SearchIndex.SearchObserver() {
+            public boolean onCardsFound(List<Card> cards)
+            {
+                chunks.add(cards);
+                return true;
+            }
+        };
+
+        List<Card> found = m_index.search("world", SearchTool.BOTH_SIDES, false,
+            m_rootCategory, observer, 5);
+        assertEquals(12, found.size());
+        assertEquals(3, chunks.size());
+        assertEquals(5, chunks.get(0).size());
+        assertEquals(2, chunks.get(2).size());
+
+        // the observer can stop the search
+        chunks.clear();
+        observer = new SearchIndex.SearchObserver() {
+            public boolean onCardsFound(List<Card> cards)
+            {
+                chunks.add(cards);
+                return false;
+            }
+        };
+
+        found = m_index.search("world", SearchTool.BOTH_SIDES, false,
+            m_rootCategory, observer, 5);
+        assertEquals(5, found.size());
+        assertEquals(1, chunks.size());
+    }
+
+    public void testIndexUpdatedOnEvents()
+    {
+        m_card1.setSides("Good Night", "Gute Nacht");
+        assertFound(m_index.search("morning", SearchTool.BOTH_SIDES, false,
+            m_rootCategory), new Card[] {});
+        assertFound(m_index.search("night", SearchTool.BOTH_SIDES, false,
+            m_rootCategory), new Card[] {m_card1});
+
+        m_rootCategory.removeCard(m_card0);
+        assertFound(m_index.search("world", SearchTool.BOTH_SIDES, false,
+            m_rootCategory), new Card[] {m_card2});
+
+        m_childCategory.remove();
+        assertFound(m_index.search("world", SearchTool.BOTH_SIDES, false,
+            m_rootCategory), new Card[] {});
+
+        Card card = new Card("new world", "neue Welt");
+        m_rootCategory.addCard(card);
+        assertFound(m_index.search("world", SearchTool.BOTH_SIDES, false,
+            m_rootCategory), new Card[] {card});
+    }
+
+    public void testCardsAddedBeforeFirstSearchAreFound()
+    {
+        SearchIndex index = new SearchIndex(m_rootCategory);
+        Card card = new Card("new world", "neue Welt");
+        m_rootCategory.addCard(card);
+        
+        assertFound(index.search("new world", SearchTool.BOTH_SIDES, false,
+            m_rootCategory), new Card[] {card});
+        index.dispose();
+    }
+    
+    public void testEventsDontWaitForRunningSearch() throws Exception
+    {
+        final Thread[] threads = new Thread[1];
+        SearchIndex.SearchObserver observer = new SearchIndex.SearchObserver() {
+            public boolean onCardsFound(List<Card> cards)
+            {
+                if (threads[0] != null)
+                    return true;
+                
+                // change the lesson on another thread while the search runs
+                threads[0] = new Thread() {
+                    public void run()
+                    {
+                        m_rootCategory.addCard(new Card("world", "Welt"));
+                    }
+                };
+                
+                threads[0].start();
+                try
+                {
+                    threads[0].join(5000);
+                }
+                catch (InterruptedException e)
+                {
+                    fail();
+                }
+                
+                assertFalse(threads[0].isAlive());
+                return true;
+            }
+        };
+        
+        m_index.search("world", SearchTool.BOTH_SIDES, false, m_rootCategory, 
+            observer, 1);
+        assertNotNull(threads[0]);
+        assertEquals(3, m_index.search("world", SearchTool.BOTH_SIDES, false,
+            m_rootCategory).size());
+    }
+
+    public void testSameResultsAsSearchTool()
+    {
+        String[] texts = {"wor", "WORLD", "e", "gen", "xyz", "o m"};
+        for (int i = 0; i < texts.length; i++)
+        {
+            for (int side = 0; side <= 2; side++)
+            {
+                List<Card> expected = SearchTool.search(texts[i], side, false,
+                    m_rootCategory.getCardView());
+                List<Card> results = m_index.search(texts[i], side, false,
+                    m_rootCategory);
+
+                assertEquals(new HashSet<Card>(expected), new HashSet<Card>(results));
+            }
+        }
+    }
+
+    private void assertFound(List<Card> results, Card[] expected)
+    {
+        assertEquals(expected.length, results.size());
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertTrue(results.contains(expected[i]));
+        }
+    }
+}
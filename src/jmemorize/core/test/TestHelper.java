@@ -21,14 +21,21 @@ package jmemorize.core.test;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import junit.framework.Assert;
 import junit.framework.AssertionFailedError;
 
 public class TestHelper
 {
+    // dates that are missing in lesson files are filled in with the current time
+    private static final long DATE_TOLERANCE = 60 * 1000;
+    
     public static <T> void assertList(T[] expected, List<?> actual)
     {
         boolean equals = expected.length == actual.size();
@@ -93,4 +100,65 @@ public class TestHelper
             throw new AssertionFailedError("expected:" + expectedList + " but was " + actual);
         }
     }
+    
+    /**
+     * Asserts that both category trees have the same cards in the same order.
+     */
+    public static void assertEqualCategories(Category expected, Category actual)
+    {
+        Assert.assertEquals(expected.getName(), actual.getName());
+        Assert.assertEquals(expected.getNumberOfDecks(), actual.getNumberOfDecks());
+
+        for (int level = 0; level < expected.getNumberOfDecks(); level++)
+        {
+            List<Card> expectedCards = expected.getLocalCards(level);
+            List<Card> actualCards = actual.getLocalCards(level);
+
+            Assert.assertEquals(expectedCards.size(), actualCards.size());
+            for (int i = 0; i < expectedCards.size(); i++)
+            {
+                assertEqualCards(expectedCards.get(i), actualCards.get(i));
+            }
+        }
+
+        List<Category> expectedChildren = expected.getChildCategories();
+        List<Category> actualChildren = actual.getChildCategories();
+
+        Assert.assertEquals(expectedChildren.size(), actualChildren.size());
+        for (int i = 0; i < expectedChildren.size(); i++)
+        {
+            assertEqualCategories(expectedChildren.get(i), actualChildren.get(i));
+        }
+    }
+
+    public static void assertEqualCards(Card expected, Card actual)
+    {
+        Assert.assertEquals(expected.getFrontSide().getText(), actual.getFrontSide().getText());
+        Assert.assertEquals(expected.getBackSide().getText(), actual.getBackSide().getText());
+        Assert.assertEquals(expected.getFrontSide().getImages(), actual.getFrontSide().getImages());
+        Assert.assertEquals(expected.getBackSide().getImages(), actual.getBackSide().getImages());
+
+        assertEqualDates(expected.getDateCreated(), actual.getDateCreated());
+        assertEqualDates(expected.getDateModified(), actual.getDateModified());
+        assertEqualDates(expected.getDateTouched(), actual.getDateTouched());
+        assertEqualDates(expected.getDateTested(), actual.getDateTested());
+        assertEqualDates(expected.getDateExpired(), actual.getDateExpired());
+
+        Assert.assertEquals(expected.getLearnedAmount(true), actual.getLearnedAmount(true));
+        Assert.assertEquals(expected.getLearnedAmount(false), actual.getLearnedAmount(false));
+        Assert.assertEquals(expected.getTestsTotal(), actual.getTestsTotal());
+        Assert.assertEquals(expected.getTestsPassed(), actual.getTestsPassed());
+        Assert.assertEquals(expected.getReviewLog(), actual.getReviewLog());
+    }
+
+    public static void assertEqualDates(Date expected, Date actual)
+    {
+        if (expected == null || actual == null)
+        {
+            Assert.assertEquals(expected, actual);
+            return;
+        }
+
+        Assert.assertTrue(Math.abs(expected.getTime() - actual.getTime()) < DATE_TOLERANCE);
+    }
 }
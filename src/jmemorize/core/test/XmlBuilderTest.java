@@ -0,0 +1,127 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.io.File;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.io.XmlBuilder;
+import jmemorize.core.learn.LearnHistory;
+import junit.framework.TestCase;
+
+public class XmlBuilderTest extends TestCase
+{
+    private static final String[] FIXTURES = {
+        "test/fixtures/no_expiration.jml",
+        "test/fixtures/simple_de.jml",
+        "test/fixtures/test.jml"};
+
+    public void testStreamingLoadSameAsDomLoad() throws Exception
+    {
+        for (int i = 0; i < FIXTURES.length; i++)
+        {
+            File file = new File(FIXTURES[i]);
+
+            Lesson domLesson = new Lesson(false);
+            XmlBuilder.loadFromXMLFile(file, domLesson, false);
+
+            Lesson streamLesson = new Lesson(false);
+            XmlBuilder.loadFromXMLFile(file, streamLesson, true);
+
+            assertTrue(domLesson.getRootCategory().getCardCount() > 0);
+            TestHelper.assertEqualCategories(domLesson.getRootCategory(),
+                streamLesson.getRootCategory());
+            assertEqualHistories(domLesson.getLearnHistory(),
+                streamLesson.getLearnHistory());
+        }
+    }
+
+    public void testSaveAndLoad() throws Exception
+    {
+        Lesson lesson = new Lesson(false);
+        XmlBuilder.loadFromXMLFile(new File(FIXTURES[2]), lesson);
+
+        Category category = lesson.getRootCategory().addCategoryChild(
+            new Category("special \"chars\" & <tags>"));
+        category.addCard(new Card("first line\nsecond line", "tab\there"));
+
+        File file = new File("test_save.jml");
+        try
+        {
+            XmlBuilder.saveAsXMLFile(file, lesson);
+
+            Lesson loadedLesson = new Lesson(false);
+            XmlBuilder.loadFromXMLFile(file, loadedLesson);
+
+            TestHelper.assertEqualCategories(lesson.getRootCategory(),
+                loadedLesson.getRootCategory());
+            assertEquals(lesson.getLearnHistory().getSummaries(),
+                loadedLesson.getLearnHistory().getSummaries());
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    public void testLoadLargeLesson() throws Exception
+    {
+        // enough cards to have the streaming loader create them in batches
+        Lesson lesson = new Lesson(false);
+        Category root = lesson.getRootCategory();
+        Category child = root.addCategoryChild(new Category("child"));
+        Category grandChild = child.addCategoryChild(new Category("grand child"));
+        Category[] categories = {root, child, grandChild};
+
+        for (int i = 0; i < 3000; i++)
+        {
+            Card card = new Card("front " + i, "back <b>" + i + "</b>");
+            categories[i % 3].addCard(card, i % 5);
+        }
+
+        File file = new File("test_large.jml");
+        try
+        {
+            XmlBuilder.saveAsXMLFile(file, lesson);
+
+            Lesson domLesson = new Lesson(false);
+            XmlBuilder.loadFromXMLFile(file, domLesson, false);
+
+            Lesson streamLesson = new Lesson(false);
+            XmlBuilder.loadFromXMLFile(file, streamLesson, true);
+
+            TestHelper.assertEqualCategories(lesson.getRootCategory(),
+                domLesson.getRootCategory());
+            TestHelper.assertEqualCategories(domLesson.getRootCategory(),
+                streamLesson.getRootCategory());
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private void assertEqualHistories(LearnHistory expected, LearnHistory actual)
+    {
+        assertEquals(expected.isLoaded(), actual.isLoaded());
+        assertEquals(expected.getSummaries(), actual.getSummaries());
+    }
+}
@@ -31,6 +31,7 @@ public interface LC
     public static final String FRONTSIDE                              = "General.FRONTSIDE";
     public static final String FLIPSIDE                               = "General.FLIPSIDE";
     public static final String DECK                                   = "General.DECK";
+    public static final String DECKS                                  = "General.DECKS";
     public static final String CREATED                                = "General.CREATED";
     /** @since 1.2.0 */
     public static final String MODIFIED                               = "General.MODIFIED";
@@ -112,6 +113,8 @@ public interface LC
     public static final String PREFERENCES_FONT                       = "Preferences.FONT";
     public static final String PREFERENCES_SIZE                       = "Preferences.SIZE";
     public static final String PREFERENCES_USE_GZIP                   = "Preferences.USE_GZIP";
+    public static final String PREFERENCES_SAVE_SNAPSHOT              = "Preferences.SAVE_SNAPSHOT";
+    public static final String PREFERENCES_IMAGE_CACHE                = "Preferences.IMAGE_CACHE";
     /** since 1.3.0 */
     public static final String PREFERENCES_VERT_ALIGN                 = "Preferences.VERT_ALIGN";
     /** since 1.3.0 */
@@ -184,6 +187,7 @@ public interface LC
     
     /** @since 1.3.0 */
     public static final String LEARN_SETTINGS_FIXED_EXPIRATION_TIME   = "LearnSettings.FIXED_EXPIRATION_TIME";
+    public static final String LEARN_SETTINGS_ADAPTIVE_SCHEDULE       = "LearnSettings.ADAPTIVE_SCHEDULE";
 
     // -- FindTool --------
 
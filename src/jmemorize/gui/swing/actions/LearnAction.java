@@ -111,7 +111,7 @@ public class LearnAction extends AbstractSessionDisabledAction
             !m_selectionProvider.getSelectedCards().isEmpty();
             
         boolean hasLearnableCards = m_selectionProvider.getCategory() != null && 
-            !m_selectionProvider.getCategory().getLearnableCards().isEmpty();
+            m_selectionProvider.getCategory().getLearnableCardCount() > 0;
         
         setEnabled(!runningSession && (hasLearnableCards || hasSelectedCards)); 
     }
@@ -87,7 +87,7 @@ public class RemoveAction extends AbstractAction2 implements SelectionObserver
             
             for (Category category : selectedCategories)
             {
-                int cardCount = category.getCards().size();
+                int cardCount = category.getCardCount();
 
                 if (cardCount > 0)
                 {
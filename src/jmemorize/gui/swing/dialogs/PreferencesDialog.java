@@ -42,7 +42,9 @@ import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.KeyStroke;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.EtchedBorder;
@@ -52,6 +54,7 @@ import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
+import jmemorize.core.ImageRepository;
 import jmemorize.core.Settings;
 import jmemorize.gui.LC;
 import jmemorize.gui.Localization;
@@ -95,6 +98,10 @@ public class PreferencesDialog extends JDialog
     private JComboBox m_langComboBox    = new JComboBox();
     private JCheckBox m_zippedLessonBox = new JCheckBox(
         Localization.get(LC.PREFERENCES_USE_GZIP));
+    private JCheckBox m_snapshotBox     = new JCheckBox(
+        Localization.get(LC.PREFERENCES_SAVE_SNAPSHOT));
+    private JSpinner  m_imageCacheSpinner = new JSpinner(
+        new SpinnerNumberModel(32, 4, 1024, 4));
     
     private JButton   m_applyButton     = new JButton(Localization.get(LC.APPLY));
     
@@ -130,6 +137,8 @@ public class PreferencesDialog extends JDialog
         
         // etc
         m_zippedLessonBox.setSelected(Settings.loadIsSaveCompressed());
+        m_snapshotBox.setSelected(Settings.loadIsSaveSnapshot());
+        m_imageCacheSpinner.setValue(new Integer(Settings.loadImageCacheSize()));
         
         // prepare lists/combobox
         updateListFromFont();
@@ -266,7 +275,7 @@ public class PreferencesDialog extends JDialog
         // build panel
         FormLayout layout = new FormLayout(
             "p, 9dlu, p:grow",      // columns //$NON-NLS-1$
-            "p, 3dlu, p, 9dlu, p"); // rows    //$NON-NLS-1$
+            "p, 3dlu, p, 3dlu, p, 9dlu, p, 3dlu, p"); // rows    //$NON-NLS-1$
         
         CellConstraints cc = new CellConstraints();
         
@@ -276,7 +285,10 @@ public class PreferencesDialog extends JDialog
         builder.addSeparator(Localization.get(LC.GENERAL),      cc.xyw(1, 1, 3));
         builder.addLabel(Localization.get(LC.PREFERENCES_LANG), cc.xy (1, 3));
         builder.add(m_langComboBox,                             cc.xy (3, 3));
-        builder.add(m_zippedLessonBox,                          cc.xyw(1, 5, 3));
+        builder.addLabel(Localization.get(LC.PREFERENCES_IMAGE_CACHE), cc.xy(1, 5));
+        builder.add(m_imageCacheSpinner,                        cc.xy (3, 5));
+        builder.add(m_zippedLessonBox,                          cc.xyw(1, 7, 3));
+        builder.add(m_snapshotBox,                              cc.xyw(1, 9, 3));
         
         return builder.getPanel();
     }
@@ -443,6 +455,14 @@ public class PreferencesDialog extends JDialog
         Settings.storeFont(FontType.TABLE_FLIP, m_fonts.get(5));
         
         Settings.storeSaveCompressed(m_zippedLessonBox.isSelected());
+        Settings.storeSaveSnapshot(m_snapshotBox.isSelected());
+        
+        int cacheSize = ((Integer)m_imageCacheSpinner.getValue()).intValue();
+        if (cacheSize != Settings.loadImageCacheSize())
+        {
+            Settings.storeImageCacheSize(cacheSize);
+            ImageRepository.getInstance().setCacheSize(cacheSize);
+        }
     }
     
     /**
@@ -30,6 +30,9 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.AbstractAction;
 import javax.swing.ButtonGroup;
@@ -41,6 +44,7 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.EtchedBorder;
@@ -52,6 +56,7 @@ import jmemorize.core.Category;
 import jmemorize.core.CategoryObserver;
 import jmemorize.core.Events;
 import jmemorize.core.Main;
+import jmemorize.core.SearchIndex;
 import jmemorize.core.SearchTool;
 import jmemorize.core.Settings;
 import jmemorize.core.Main.ProgramEndObserver;
@@ -109,6 +114,11 @@ public class FindFrame extends EscapableFrame
     private boolean             m_matchCase;
     private Category            m_searchCategory;
     
+    // results of the last completed search. used to refine the next search.
+    private List<Card>          m_lastResults;
+    private SearchTask          m_searchTask;
+    private ExecutorService     m_searchExecutor;
+    
     private static FindFrame    m_instance;
 
     private class FindAction extends AbstractAction2
@@ -124,6 +134,109 @@ public class FindFrame extends EscapableFrame
         }
     }
 
+    /**
+     * Runs a search off the event dispatch thread and streams the found cards
+     * into the card table in chunks. If the results of a previous search are
+     * given, only these are searched. Otherwise the search index of the lesson
+     * is used, which is built by its first search.
+     */
+    private class SearchTask implements Runnable, SearchIndex.SearchObserver
+    {
+        private static final int CHUNK_SIZE = 500;
+        
+        private String           m_text;
+        private int              m_sides;
+        private boolean          m_case;
+        private Category         m_category;
+        private List<Card>       m_previousResults;
+        private SearchIndex      m_index;
+        
+        private volatile boolean m_cancelled;
+        
+        public SearchTask(String text, int sides, boolean matchCase, 
+            Category category, List<Card> previousResults, SearchIndex index)
+        {
+            m_text            = text;
+            m_sides           = sides;
+            m_case            = matchCase;
+            m_category        = category;
+            m_previousResults = previousResults;
+            m_index           = index;
+        }
+        
+        public void cancel()
+        {
+            m_cancelled = true;
+        }
+        
+        public void run()
+        {
+            try
+            {
+                List<Card> results;
+                if (m_previousResults != null)
+                {
+                    results = new ArrayList<Card>();
+                    for (int i = 0; i < m_previousResults.size() && !m_cancelled; 
+                        i += CHUNK_SIZE)
+                    {
+                        int end = Math.min(i + CHUNK_SIZE, m_previousResults.size());
+                        List<Card> found = SearchTool.search(m_text, m_sides, m_case, 
+                            m_previousResults.subList(i, end));
+                        
+                        results.addAll(found);
+                        onCardsFound(found);
+                    }
+                }
+                else
+                {
+                    results = m_index.search(m_text, m_sides, m_case, m_category, 
+                        this, CHUNK_SIZE);
+                }
+                
+                finish(results);
+            }
+            catch (RuntimeException e)
+            {
+                Main.logThrowable("Error searching cards", e); //$NON-NLS-1$
+            }
+        }
+        
+        /* (non-Javadoc)
+         * @see jmemorize.core.SearchIndex.SearchObserver
+         */
+        public boolean onCardsFound(final List<Card> cards)
+        {
+            if (!cards.isEmpty())
+            {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        if (SearchTask.this == m_searchTask)
+                            m_cardTable.getView().addCards(cards);
+                    }
+                });
+            }
+            
+            return !m_cancelled;
+        }
+        
+        private void finish(final List<Card> results)
+        {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run()
+                {
+                    if (SearchTask.this != m_searchTask)
+                        return;
+                    
+                    m_searchTask = null;
+                    m_lastResults = results;
+                    m_cardTable.getView().setCards(results, m_category);
+                }
+            });
+        }
+    }
+
     private class CloseAction extends AbstractAction2
     {
         public CloseAction()
@@ -165,6 +278,9 @@ public class FindFrame extends EscapableFrame
      */
     public void clear()
     {
+        cancelSearch();
+        m_lastResults = null;
+        
         Category selectedCategory = m_categoryBox.getSelectedCategory();
         m_cardTable.getView().setCards(new ArrayList<Card>(0), selectedCategory);
     }
@@ -176,32 +292,103 @@ public class FindFrame extends EscapableFrame
         if (searchText == null || searchText.equals("")) //$NON-NLS-1$
             return;
 
-        m_searchText = searchText;
-        m_recentSearchTexts.push(m_searchText);
-
+        m_recentSearchTexts.push(searchText);
+        startSearch(searchText);
+    }
+    
+    /**
+     * Searches for the text that is currently typed into the search box. If
+     * the new text only extends the last search text, just the last results
+     * are searched again.
+     */
+    public void searchAsYouType()
+    {
+        String searchText = (String)m_searchTextBox.getEditor().getItem();
+        
+        if (searchText == null || searchText.equals(m_searchText))
+            return;
+        
+        if (searchText.equals("")) //$NON-NLS-1$
+        {
+            m_searchText = searchText;
+            clear();
+            return;
+        }
+        
+        startSearch(searchText);
+    }
+    
+    private void startSearch(String searchText)
+    {
+        int searchSides;
         if (m_radioBothSides.isSelected())
         {
-            m_searchSides = SearchTool.BOTH_SIDES;
+            searchSides = SearchTool.BOTH_SIDES;
         } 
         else
         {
-            m_searchSides = m_radioFrontSide.isSelected() ? 
+            searchSides = m_radioFrontSide.isSelected() ? 
                 SearchTool.FRONT_SIDE : SearchTool.FLIP_SIDE;
         }
+        
+        Category searchCategory = m_categoryBox.getSelectedCategory();
+        boolean matchCase = m_matchCaseBox.isSelected();
+        
+        boolean refine = m_lastResults != null && m_searchText != null &&
+            searchSides == m_searchSides && matchCase == m_matchCase && 
+            searchCategory == m_searchCategory && 
+            (matchCase ? searchText.indexOf(m_searchText) > -1 :
+                searchText.toLowerCase().indexOf(m_searchText.toLowerCase()) > -1);
+        List<Card> previousResults = refine ? m_lastResults : null;
+        
+        m_searchText = searchText;
+        m_searchSides = searchSides;
+        m_matchCase = matchCase;
 
         if (m_searchCategory != null)
         {
             m_searchCategory.removeObserver(FindFrame.this);
         }
-        m_searchCategory = m_categoryBox.getSelectedCategory();
+        m_searchCategory = searchCategory;
         m_searchCategory.addObserver(FindFrame.this);
 
-        m_matchCase = m_matchCaseBox.isSelected();
-
-        List<Card> results = SearchTool.search(m_searchText, m_searchSides, 
-            m_matchCase, m_searchCategory.getCards());
+        cancelSearch();
+        m_lastResults = null;
+        m_cardTable.getView().setCards(new ArrayList<Card>(0), m_searchCategory);
         
-        m_cardTable.getView().setCards(results, m_searchCategory);
+        // the index is created here, because it observes the category tree
+        SearchIndex index = previousResults == null ? 
+            Main.getInstance().getLesson().getSearchIndex() : null;
+        
+        m_searchTask = new SearchTask(m_searchText, m_searchSides, 
+            m_matchCase, m_searchCategory, previousResults, index);
+        getSearchExecutor().execute(m_searchTask);
+    }
+    
+    private void cancelSearch()
+    {
+        if (m_searchTask != null)
+        {
+            m_searchTask.cancel();
+            m_searchTask = null;
+        }
+    }
+    
+    private ExecutorService getSearchExecutor()
+    {
+        if (m_searchExecutor == null)
+        {
+            m_searchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "search"); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        
+        return m_searchExecutor;
     }
 
     public boolean close()
@@ -215,6 +402,12 @@ public class FindFrame extends EscapableFrame
      */
     public void onCardEvent(int type, Card card, Category category, int deck)
     {
+        // the last results can't be refined anymore if cards change
+        if (type != Events.DECK_EVENT && type != Events.EXPIRED_EVENT)
+        {
+            m_lastResults = null;
+        }
+        
         // CHECK move into cardtable!?
         List<Card> cards = m_cardTable.getView().getCards();
 
@@ -330,6 +523,10 @@ public class FindFrame extends EscapableFrame
                 {
                     search();
                 }
+                else
+                {
+                    searchAsYouType();
+                }
             }
 
             public void keyTyped(KeyEvent e)
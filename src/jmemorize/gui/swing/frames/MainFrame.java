@@ -45,6 +45,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
+import javax.swing.JTabbedPane;
 import javax.swing.JToolBar;
 import javax.swing.SwingConstants;
 import javax.swing.TransferHandler;
@@ -90,6 +91,7 @@ import jmemorize.gui.swing.dialogs.ErrorDialog;
 import jmemorize.gui.swing.dialogs.OkayButtonDialog;
 import jmemorize.gui.swing.panels.DeckChartPanel;
 import jmemorize.gui.swing.panels.DeckTablePanel;
+import jmemorize.gui.swing.panels.DueForecastPanel;
 import jmemorize.gui.swing.panels.LearnPanel;
 import jmemorize.gui.swing.panels.SessionChartPanel;
 import jmemorize.gui.swing.panels.StatusBar;
@@ -120,6 +122,7 @@ public class MainFrame extends JFrame implements CategoryObserver,
     private CategoryTree                    m_categoryTree;
     private DeckTablePanel                  m_deckTablePanel;
     private DeckChartPanel                  m_deckChartPanel;
+    private DueForecastPanel                m_dueForecastPanel;
     private LearnPanel                      m_learnPanel;
     private StatusBar                       m_statusBar          = new StatusBar();
     private NewCardFramesManager            m_newCardManager     = new NewCardFramesManager();
@@ -268,6 +271,7 @@ public class MainFrame extends JFrame implements CategoryObserver,
         m_category.addObserver(this);
 
         m_deckChartPanel.setCategory(category);
+        m_dueForecastPanel.setCategory(category);
         m_deckTablePanel.setCategory(category); // TODO refactor. give only list of cards
         
         m_categoryBox.setSelectedCategory(category);
@@ -671,6 +675,13 @@ public class MainFrame extends JFrame implements CategoryObserver,
         m_deckChartPanel = new DeckChartPanel(this);
         m_deckChartPanel.setMinimumSize(new Dimension(100, 150));
         
+        m_dueForecastPanel = new DueForecastPanel();
+        
+        JTabbedPane chartTabs = new JTabbedPane(JTabbedPane.BOTTOM);
+        chartTabs.setMinimumSize(new Dimension(100, 150));
+        chartTabs.addTab(Localization.get(LC.DECKS), m_deckChartPanel);
+        chartTabs.addTab(Localization.get("DeckChart.FORECAST"), m_dueForecastPanel); //$NON-NLS-1$
+        
         m_learnPanel = new LearnPanel();
         m_deckTablePanel = new DeckTablePanel(this);
 
@@ -703,7 +714,7 @@ public class MainFrame extends JFrame implements CategoryObserver,
         BasicSplitPaneUI ui = (BasicSplitPaneUI)m_verticalSplitPane.getUI();
         ui.getDivider().setBorder(new EmptyBorder(5, 2, 5, 2));
         
-        m_verticalSplitPane.setTopComponent(m_deckChartPanel);
+        m_verticalSplitPane.setTopComponent(chartTabs);
         m_verticalSplitPane.setBottomComponent(m_bottomPanel);
         
         mainPanel.setPreferredSize(new Dimension(800, 500));
@@ -40,6 +40,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import javax.swing.ImageIcon;
 import javax.swing.InputMap;
@@ -75,6 +76,7 @@ import javax.swing.text.View;
 import javax.swing.text.ViewFactory;
 
 import jmemorize.core.FormattedText;
+import jmemorize.core.ImageRepository;
 import jmemorize.core.Main;
 import jmemorize.gui.LC;
 import jmemorize.gui.Localization;
@@ -94,11 +96,18 @@ public class CardSidePanel extends JPanel
     private class ScaledImagePanel extends JPanel
     {
         private Image     m_image;
+        private String    m_imageId; // null if not in repository
         private int       m_padding = 2;
+        private Future<?> m_scaleTask;
 
-        public void setImageToDisplay(Image imageToDisplay)
+        public void setImageToDisplay(ImageIcon imageToDisplay)
         {
-            m_image = imageToDisplay;
+            m_image = imageToDisplay.getImage();
+            
+            String description = imageToDisplay.getDescription();
+            m_imageId = description != null && 
+                description.startsWith(ImageRepository.IMG_ID_PREFIX) ? 
+                description.substring(ImageRepository.IMG_ID_PREFIX.length()) : null;
         }
 
         @Override
@@ -140,6 +149,9 @@ public class CardSidePanel extends JPanel
             int left = padding + (dimension.width  - w) / 2;
             int top  = padding + (dimension.height - h) / 2;
             
+            if (drawScaledImage(g, left, top, w - 2*padding, h - 2*padding))
+                return;
+            
             if (g instanceof Graphics2D)
             {
                 Graphics2D g2d = (Graphics2D)g;
@@ -152,6 +164,51 @@ public class CardSidePanel extends JPanel
                 left, top, left + w - 2*padding, top + h - 2*padding, 
                 0, 0, imgWidth, imgHeight, null);
         }
+        
+        /**
+         * Draws the cached scaled copy of the image if there is one.
+         * Otherwise the copy is created in the background and the panel is 
+         * repainted when it is ready.
+         * 
+         * @return <code>true</code> if the scaled copy was drawn.
+         */
+        private boolean drawScaledImage(Graphics g, int left, int top, 
+            int width, int height)
+        {
+            if (m_imageId == null || width <= 0 || height <= 0 ||
+                (width == m_image.getWidth(null) && height == m_image.getHeight(null)))
+            {
+                return false;
+            }
+            
+            ImageRepository repository = ImageRepository.getInstance();
+            ImageIcon scaled = repository.getCachedScaledImage(m_imageId, width, height);
+            
+            if (scaled != null)
+            {
+                g.drawImage(scaled.getImage(), left, top, null);
+                return true;
+            }
+            
+            // only the copy for the latest size is needed 
+            if (m_scaleTask != null)
+                m_scaleTask.cancel(false);
+            
+            m_scaleTask = repository.scaleImageLater(m_imageId, width, height, 
+                new Runnable() {
+                    public void run()
+                    {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            public void run()
+                            {
+                                repaint();
+                            }
+                        });
+                    }
+                });
+            
+            return false;
+        }
     }
     
     private class MyEditorKit extends StyledEditorKit
@@ -543,7 +600,7 @@ public class CardSidePanel extends JPanel
                 Localization.get(LC.IMAGE), m_currentImage + 1, imgCount);
             
             m_imageLabel.setText(text);
-            m_imagePanel.setImageToDisplay(m_images.get(m_currentImage).getImage());
+            m_imagePanel.setImageToDisplay(m_images.get(m_currentImage));
             m_imagePanel.repaint();
         }
     }
@@ -117,7 +117,7 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
             Rectangle2D dataArea, CategoryPlot plot, CategoryAxis domainAxis, 
             ValueAxis rangeAxis, CategoryDataset data, int row, int column, int pass)
         {
-            if (column - 1 == m_deck && m_category.getCards(m_deck).size() > 0)
+            if (column - 1 == m_deck && m_category.getCardCount(m_deck) > 0)
             {
                 setOutlinePaint(ColorConstants.SELECTION_COLOR, false);
                 setBaseItemLabelFont(m_boldFont, false);
@@ -346,9 +346,9 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
     
     private void updateSummaryBar()
     {
-        int learned = m_category.getLearnedCards().size();
-        int expired = m_category.getExpiredCards().size();
-        int unlearned = m_category.getUnlearnedCards().size();
+        int learned = m_category.getLearnedCardCount();
+        int expired = m_category.getExpiredCardCount();
+        int unlearned = m_category.getUnlearnedCardCount();
         
         setValues(m_dataset, SUMMARY_BAR_NAME, unlearned, expired, learned);
     }
@@ -357,7 +357,7 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
     {
         if (level == 0)
         {
-            int unlearnedCards = m_category.getCards(level).size();
+            int unlearnedCards = m_category.getCardCount(level);
             setValues(m_dataset, DECK0_NAME, unlearnedCards, 0, 0);
         } 
         else
@@ -369,8 +369,8 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
             }
             else
             {
-                int learnedCards = m_category.getLearnedCards(level).size();
-                int expiredCards = m_category.getExpiredCards(level).size();
+                int learnedCards = m_category.getLearnedCardCount(level);
+                int expiredCards = m_category.getExpiredCardCount(level);
                 
                 setValues(m_dataset, deckLabel, 0, expiredCards, learnedCards);
             }
@@ -69,7 +69,7 @@ public class DeckTablePanel extends JPanel implements CategoryObserver
         public void actionPerformed(ActionEvent e)
         {
             int nextLevel = m_currentDeckLevel + 1;
-            while (m_category.getCards(nextLevel).isEmpty())
+            while (m_category.getCardCount(nextLevel) == 0)
             {
                 nextLevel++;
             } 
@@ -93,7 +93,7 @@ public class DeckTablePanel extends JPanel implements CategoryObserver
         public void actionPerformed(ActionEvent e)
         {
             int prevLevel = m_currentDeckLevel - 1;
-            while (prevLevel >= 0 && m_category.getCards(prevLevel).isEmpty() )
+            while (prevLevel >= 0 && m_category.getCardCount(prevLevel) == 0 )
             {
                 prevLevel--;
             }
@@ -138,7 +138,7 @@ public class DeckTablePanel extends JPanel implements CategoryObserver
      */
     public void setDeck(int deck)
     {
-        m_cardTable.getView().setCards(m_category.getCards(deck), m_category);
+        m_cardTable.getView().setCards(m_category.getCardView(deck), m_category);
         m_currentDeckLevel = deck;
         updateButtons();
     }
@@ -0,0 +1,189 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.gui.swing.panels;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.swing.JPanel;
+import javax.swing.Timer;
+import javax.swing.border.EmptyBorder;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.CategoryObserver;
+import jmemorize.core.Main;
+import jmemorize.gui.Localization;
+import jmemorize.gui.swing.ColorConstants;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.renderer.category.BarRenderer;
+import org.jfree.data.category.DefaultCategoryDataset;
+
+/**
+ * Shows how many cards of the current category will be due on each of the
+ * next days in form of a bar chart. The first bar also holds the cards that
+ * have already expired.
+ */
+public class DueForecastPanel extends JPanel implements CategoryObserver
+{
+    private static final long       serialVersionUID = 1L;
+    
+    public static final int         DAYS            = 30;
+
+    // card events come in bursts, e.g. when a lesson is loaded or reset
+    private static final int        UPDATE_DELAY    = 250;
+
+    private static final String     DUE_CARDS_ROW   =
+        Localization.get("DeckChart.DUE_CARDS"); //$NON-NLS-1$
+    private static final String     TODAY           =
+        Localization.get("DeckChart.TODAY");     //$NON-NLS-1$
+
+    private Category                m_category;
+
+    private DefaultCategoryDataset  m_dataset       = new DefaultCategoryDataset();
+    private DateFormat              m_dayFormat     = new SimpleDateFormat("EEE d"); //$NON-NLS-1$
+
+    private Timer                   m_updateTimer;
+
+    public DueForecastPanel()
+    {
+        initComponents();
+    }
+
+    public void setCategory(Category category)
+    {
+        if (m_category != null)
+        {
+            m_category.removeObserver(this);
+        }
+
+        m_category = category;
+        category.addObserver(this);
+
+        updateForecast();
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.CategoryObserver
+     */
+    public void onCategoryEvent(int type, Category category)
+    {
+        // ignore. mainframe already looks for important category changes
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.CategoryObserver
+     */
+    public void onCardEvent(int type, Card card, Category category, int level)
+    {
+        // hidden forecasts are updated when they are shown again
+        if (isShowing())
+            m_updateTimer.restart();
+    }
+
+    private void updateForecast()
+    {
+        m_updateTimer.stop();
+
+        if (m_category == null || !isShowing())
+            return;
+
+        Date now = Main.getNow();
+        int[] forecast = m_category.getDueForecast(now, DAYS);
+
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(now);
+
+        m_dataset.clear();
+        for (int i = 0; i < forecast.length; i++)
+        {
+            String day = i == 0 ? TODAY : m_dayFormat.format(cal.getTime());
+            m_dataset.addValue(forecast[i], DUE_CARDS_ROW, day);
+
+            cal.add(Calendar.DAY_OF_YEAR, 1);
+        }
+    }
+
+    private JFreeChart createChart()
+    {
+        JFreeChart chart = ChartFactory.createBarChart(
+            null,                     // chart title
+            null,                     // domain axis label
+            Localization.get("DeckChart.CARDS"), // range axis label //$NON-NLS-1$
+            m_dataset,                // data
+            PlotOrientation.VERTICAL, // the plot orientation
+            false,                    // include legend
+            true,                     // tooltips
+            false                     // urls
+        );
+
+        CategoryPlot plot = (CategoryPlot)chart.getPlot();
+        plot.getRangeAxis().setStandardTickUnits(NumberAxis.createIntegerTickUnits());
+        plot.getDomainAxis().setCategoryLabelPositions(CategoryLabelPositions.UP_45);
+
+        BarRenderer renderer = (BarRenderer)plot.getRenderer();
+        renderer.setSeriesPaint(0, ColorConstants.EXPIRED_CARDS);
+
+        return chart;
+    }
+
+    private void initComponents()
+    {
+        ChartPanel chartPanel = new ChartPanel(createChart());
+
+        chartPanel.setMinimumDrawHeight(100);
+        chartPanel.setMinimumDrawWidth(400);
+
+        chartPanel.setMaximumDrawHeight(1600);
+        chartPanel.setMaximumDrawWidth(10000);
+
+        setLayout(new BorderLayout());
+        setBorder(new EmptyBorder(10, 2, 2, 2));
+        add(chartPanel);
+
+        m_updateTimer = new Timer(UPDATE_DELAY, new ActionListener() {
+            public void actionPerformed(ActionEvent e)
+            {
+                updateForecast();
+            }
+        });
+        m_updateTimer.setRepeats(false);
+
+        addComponentListener(new ComponentAdapter() {
+            public void componentShown(ComponentEvent e)
+            {
+                updateForecast();
+            }
+        });
+    }
+}
@@ -128,6 +128,9 @@ public class LearnSettingPanels
     
     private JSpinner         m_fixedExpirationTimeSpinner  = new JSpinner();
     
+    private JCheckBox        m_adaptiveScheduleCheckBox    = 
+        new JCheckBox(Localization.get(LC.LEARN_SETTINGS_ADAPTIVE_SCHEDULE));
+    
     // other
     private LearnSettings    m_settings;
     private boolean          m_hasSelectedCards;
@@ -244,6 +247,8 @@ public class LearnSettingPanels
         
         updateFixedDueTimeSpinner();
         
+        m_adaptiveScheduleCheckBox.setSelected(m_settings.isAdaptiveSchedulingEnabled());
+        
         // get category settings
         m_categoryGroupsCheckBox.setSelected(m_settings.isGroupByCategory());
         
@@ -315,6 +320,8 @@ public class LearnSettingPanels
         int minute = calendar.get(Calendar.MINUTE);
         m_settings.setFixedExpirationTime(hour, minute);
         
+        m_settings.setAdaptiveSchedulingEnabled(m_adaptiveScheduleCheckBox.isSelected());
+        
         // apply category settings
         m_settings.setGroupByCategory(m_categoryGroupsCheckBox.isSelected());
         m_settings.setCategoryOrder(m_categoryOrderRandomButton.isSelected() ?
@@ -542,7 +549,7 @@ public class LearnSettingPanels
         // build panel
         FormLayout layout = new FormLayout(
             "18dlu, 70dlu, left:d:grow", // columns //$NON-NLS-1$
-            "p, 3dlu, p"); // rows //$NON-NLS-1$
+            "p, 3dlu, p, 9dlu, p"); // rows //$NON-NLS-1$
         
         CellConstraints cc = new CellConstraints();
         
@@ -551,6 +558,7 @@ public class LearnSettingPanels
         
         builder.add(m_fixedExpirationTimeCheckBox,  cc.xyw( 1,  1, 3));
         builder.add(m_fixedExpirationTimeSpinner,   cc.xyw( 2,  3, 1 ));
+        builder.add(m_adaptiveScheduleCheckBox,     cc.xyw( 1,  5, 3));
         
         return builder.getPanel();
     }
@@ -603,8 +611,8 @@ public class LearnSettingPanels
     
     private void updateCardButtons()
     {
-        boolean enableUnlearned = !getSelectedCategory().getUnlearnedCards().isEmpty();
-        boolean enableExpired = !getSelectedCategory().getExpiredCards().isEmpty();
+        boolean enableUnlearned = getSelectedCategory().getUnlearnedCardCount() > 0;
+        boolean enableExpired = getSelectedCategory().getExpiredCardCount() > 0;
         boolean enableAll = enableUnlearned && enableExpired;
         boolean enableSelected =  m_hasSelectedCards;
         
@@ -25,7 +25,10 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.File;
+import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -54,7 +57,9 @@ import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardSide;
 import jmemorize.core.Category;
+import jmemorize.core.ImageRepository;
 import jmemorize.core.Main;
 import jmemorize.core.Settings;
 import jmemorize.core.Main.ProgramEndObserver;
@@ -279,9 +284,13 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
             return m_category;
         }
         
-        public void setCards(List<Card> cards, Category category)
+        /**
+         * Sets the cards shown by this table. The cards are copied into a
+         * list owned by the table, so read-only card views can be passed.
+         */
+        public void setCards(Collection<Card> cards, Category category)
         {
-            m_cards = cards;
+            m_cards = new ArrayList<Card>(cards);
             m_category = category;
             resort();
             
@@ -307,6 +316,34 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
         {
             return m_cards;
         }
+        
+        /**
+         * Appends the cards at the end of the table without sorting them. This
+         * is used to show partial results, which should be replaced by a
+         * call to {@link #setCards(Collection, Category)} at the end.
+         */
+        public void addCards(Collection<Card> cards)
+        {
+            if (cards.isEmpty())
+                return;
+            
+            int firstRow = m_cards.size();
+            m_cards.addAll(cards);
+            
+            fireTableRowsInserted(firstRow, m_cards.size() - 1);
+        }
+        
+        /**
+         * @return the comparator that represents the current sorting of this
+         * table. It doesn't depend on any swing state and can be used to sort
+         * cards on other threads.
+         */
+        public Comparator<Card> getComparator()
+        {
+            Comparator<Card> comparator = new CardComparator(m_orderModelIndex);
+            return m_orderDir == ASCENDING ? 
+                comparator : new ReverseOrder<Card>(comparator);
+        }
 
         /**
          * @see javax.swing.table.TableModel#getRowCount()
@@ -369,9 +406,7 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
         {
             if (m_cards != null) //CHECK
             {
-                Comparator<Card> comparator = new CardComparator(m_orderModelIndex);
-                Collections.sort(m_cards, m_orderDir == ASCENDING ? 
-                    comparator : new ReverseOrder<Card>(comparator));
+                Collections.sort(m_cards, getComparator());
                 
                 fireTableDataChanged();
             }
@@ -686,6 +721,12 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
         
         switch (modelIndex)
         {
+            case COLUMN_FRONTSIDE:
+                return getImagesToolTip(card.getFrontSide());
+                
+            case COLUMN_BACKSIDE:
+                return getImagesToolTip(card.getBackSide());
+                
             case COLUMN_CATEGORY:
                 return card.getCategory().getPath();
                 
@@ -710,6 +751,36 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
         }
     }
     
+    /**
+     * @return a tooltip that shows the thumbnails of the images of given card
+     * side or <code>null</code> if there are no thumbnails (yet). Missing
+     * thumbnails are created in the background, so that they are shown when
+     * the tooltip is requested the next time.
+     */
+    private String getImagesToolTip(CardSide side)
+    {
+        StringBuffer buf = new StringBuffer();
+        
+        for (String id : side.getImages())
+        {
+            File thumbnail = ImageRepository.getInstance().getThumbnail(id);
+            if (thumbnail == null)
+                continue;
+            
+            try
+            {
+                buf.append("<img src=\"").append(thumbnail.toURI().toURL()) //$NON-NLS-1$
+                    .append("\"> "); //$NON-NLS-1$
+            }
+            catch (MalformedURLException e)
+            {
+                Main.logThrowable("invalid thumbnail file " + thumbnail, e); //$NON-NLS-1$
+            }
+        }
+        
+        return buf.length() > 0 ? "<html>" + buf + "</html>" : null; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    
     /*
      * @see javax.swing.JTable
      */
@@ -0,0 +1,114 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.util;
+
+/**
+ * Encodes binary data as text with the base64 alphabet of RFC 2045, so that
+ * it can be stored in XML attributes. No line breaks are inserted.
+ */
+public final class Base64
+{
+    private static final char[] ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/" //$NON-NLS-1$
+        .toCharArray();
+
+    private static final int[]  VALUES   = new int[128];
+
+    static
+    {
+        for (int i = 0; i < VALUES.length; i++)
+            VALUES[i] = -1;
+
+        for (int i = 0; i < ALPHABET.length; i++)
+            VALUES[ALPHABET[i]] = i;
+    }
+
+    private Base64()
+    {
+    }
+
+    public static String encode(byte[] bytes)
+    {
+        StringBuffer buf = new StringBuffer((bytes.length + 2) / 3 * 4);
+
+        for (int i = 0; i < bytes.length; i += 3)
+        {
+            int remaining = bytes.length - i;
+            int b = (bytes[i] & 0xFF) << 16;
+            if (remaining > 1)
+                b |= (bytes[i + 1] & 0xFF) << 8;
+            if (remaining > 2)
+                b |= bytes[i + 2] & 0xFF;
+
+            buf.append(ALPHABET[(b >> 18) & 0x3F]);
+            buf.append(ALPHABET[(b >> 12) & 0x3F]);
+            buf.append(remaining > 1 ? ALPHABET[(b >> 6) & 0x3F] : '=');
+            buf.append(remaining > 2 ? ALPHABET[b & 0x3F] : '=');
+        }
+
+        return buf.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException if given text isn't valid base64.
+     */
+    public static byte[] decode(String text)
+    {
+        int length = text.length();
+        while (length > 0 && text.charAt(length - 1) == '=')
+            length--;
+
+        if (length % 4 == 1)
+            throw new IllegalArgumentException("invalid base64 length"); //$NON-NLS-1$
+
+        byte[] bytes = new byte[length * 3 / 4];
+        int pos = 0;
+        int b = 0;
+
+        for (int i = 0; i < length; i++)
+        {
+            char c = text.charAt(i);
+            int value = c < VALUES.length ? VALUES[c] : -1;
+            if (value < 0)
+                throw new IllegalArgumentException("invalid base64 character: " + c); //$NON-NLS-1$
+
+            b = (b << 6) | value;
+            if (i % 4 == 3)
+            {
+                bytes[pos++] = (byte)(b >> 16);
+                bytes[pos++] = (byte)(b >> 8);
+                bytes[pos++] = (byte)b;
+                b = 0;
+            }
+        }
+
+        // the last incomplete group
+        if (length % 4 == 2)
+        {
+            bytes[pos++] = (byte)(b >> 4);
+        }
+        else if (length % 4 == 3)
+        {
+            bytes[pos++] = (byte)(b >> 10);
+            bytes[pos++] = (byte)(b >> 2);
+        }
+
+        return bytes;
+    }
+}
@@ -21,7 +21,9 @@
  *  
  *  This Set does not allow null elements.
  *  
- *  This was written for a program that uses jdk 1.4, so it doesn't yet use the generic style.  
+ *  The equivalence classes are kept in a list that is sorted by comparator
+ *  order, so the class of a new element is found by binary search. Membership
+ *  is looked up in a hash map, so neither depends on the number of classes.
  *
  *  This program is free software; you can redistribute it and/or modify
  *  it under the terms of the GNU General Public License as published by
@@ -41,13 +43,14 @@ package jmemorize.util;
 
 import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
@@ -62,19 +65,19 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
     // which contains all the elements equivalent to each other.
     // The sublists appear in order corresponding to the ordering
     // provided by the comparator provided at set creation time. 
-    private List                m_equivalenceClasses;
-    private int                 m_size; // cached for efficiency
-    private Comparator          m_comparator;
-    private ListIterator        m_loopEqvClassIter; // non-null index used by the loop iterator
-    private List                m_loopCurrentEqvClass; // ptr to current class, null ok
-    private ListIterator<T>     m_loopItemIter; // non-null index used by the loop iterator
-    private final static List   m_emptyList = new ArrayList(); // emptyList used for gen-ing iterators
+    // It is a random access list, so that classes can be found by binary search
+    private List<List<T>>           m_equivalenceClasses;
+    private int                     m_size; // cached for efficiency
+    private Comparator<T>           m_comparator;
+    private ListIterator<List<T>>   m_loopEqvClassIter; // non-null index used by the loop iterator
+    private List<T>                 m_loopCurrentEqvClass; // ptr to current class, null ok
+    private ListIterator<T>         m_loopItemIter; // non-null index used by the loop iterator
     
     // In order to maintain some sanity in the face of objects changing with respect to
     // the comparator after being added to the set, we keep track of which class every object
     // is in.  This way, the behavior of contains and remove are undisturbed by changes to the 
     // objects.
-    private HashMap         m_itemToClassMap;
+    private Map<T, List<T>> m_itemToClassMap;
     
     // TODO - size is now redundant with the size of the item-class map, remove...
     
@@ -94,9 +97,9 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
     {
         super();
         m_comparator = c;
-        m_equivalenceClasses = new LinkedList();
+        m_equivalenceClasses = new ArrayList<List<T>>();
         m_size = 0;
-        m_itemToClassMap = new HashMap();
+        m_itemToClassMap = new HashMap<T, List<T>>();
         resetLoopIterator();
         m_changeID = 0;
         m_shuffleEquivalenceClasses = true;
@@ -105,7 +108,7 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
     protected class OnePassIterator implements Iterator<T> 
     {
         private int localChangeID;
-        private ListIterator localEqvClassIter; // class iter
+        private ListIterator<List<T>> localEqvClassIter; // class iter
         private ListIterator<T> localItemIter; // item iter
 
         protected OnePassIterator() 
@@ -140,7 +143,7 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
             
             if (localItemIter == null || !localItemIter.hasNext()) 
             {
-                localItemIter = ((List)localEqvClassIter.next()).listIterator();
+                localItemIter = localEqvClassIter.next().listIterator();
             }
             
             return localItemIter.next();
@@ -191,12 +194,12 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
                     m_loopEqvClassIter = m_equivalenceClasses.listIterator();
                 }
                 
-                m_loopCurrentEqvClass = (List)m_loopEqvClassIter.next();
+                m_loopCurrentEqvClass = m_loopEqvClassIter.next();
                 assert m_loopCurrentEqvClass.size() > 0;
                 
                 if (m_shuffleEquivalenceClasses) 
                 {
-                    java.util.Collections.shuffle(m_loopCurrentEqvClass);
+                    Collections.shuffle(m_loopCurrentEqvClass);
                 }
                 m_loopItemIter = m_loopCurrentEqvClass.listIterator();                
             }
@@ -228,11 +231,54 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
         return new LoopIterator();
     }
    
+    /**
+     * Returns the elements that the loopIterator will most likely return next,
+     * without advancing it. The remaining elements of the current equivalence
+     * class are returned in the order in which they will be returned. Elements
+     * of the following classes are returned in their current order, although
+     * the loopIterator might shuffle them when reaching their class.
+     *
+     * @param maxElements the maximum number of elements to return.
+     * @return the upcoming elements. Every element is contained only once.
+     */
+    public List<T> peekLoopIterator(int maxElements)
+    {
+        List<T> elements = new ArrayList<T>();
+        int count = Math.min(maxElements, m_size);
+
+        // the rest of the current class
+        int itemIdx = m_loopItemIter.nextIndex();
+        if (m_loopCurrentEqvClass != null)
+        {
+            for (int i = itemIdx; i < m_loopCurrentEqvClass.size() &&
+                elements.size() < count; i++)
+            {
+                elements.add(m_loopCurrentEqvClass.get(i));
+            }
+        }
+
+        // the following classes, recycling to the beginning
+        int classIdx = m_loopEqvClassIter.nextIndex();
+        int classes = m_equivalenceClasses.size();
+        for (int i = 0; i < classes && elements.size() < count; i++)
+        {
+            List<T> eqvClass = m_equivalenceClasses.get((classIdx + i) % classes);
+            int end = eqvClass == m_loopCurrentEqvClass ? itemIdx : eqvClass.size();
+
+            for (int j = 0; j < end && elements.size() < count; j++)
+            {
+                elements.add(eqvClass.get(j));
+            }
+        }
+
+        return elements;
+    }
+
     public void resetLoopIterator() 
     {
         m_loopEqvClassIter = m_equivalenceClasses.listIterator();
         m_loopCurrentEqvClass = null;
-        m_loopItemIter = m_emptyList.listIterator();        
+        m_loopItemIter = Collections.<T>emptyList().listIterator();
     }
     
     /**
@@ -286,10 +332,14 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
         return addPositional(arg0, false);
     }
 
-    protected boolean addPositional(Object arg0, boolean atEnd) 
+    protected boolean addPositional(T arg0, boolean atEnd) 
     {
+        if (m_itemToClassMap.containsKey(arg0)) 
+        {
+            return false; // already a member, do nothing
+        }
+        
         EqvPosition eqvPosition = findEqvClass(arg0);
-        boolean isChanged = false;
         if (eqvPosition.matchingEqvClass != null) 
         {
             int iterIdx = 0;
@@ -302,47 +352,34 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
                 iterIdx = m_loopItemIter.nextIndex();
             }
             
-            if (!eqvPosition.matchingEqvClass.contains(arg0)) 
+            if (atEnd) 
             {
-                if (atEnd) 
-                {
-                    eqvPosition.matchingEqvClass.add(arg0);
-                } 
-                else
-                {
-                    eqvPosition.matchingEqvClass.add(0, arg0);
-                    iterIdx += 1;
-                }
-                
-                isChanged = true;
-                
-                if (replaceLoopItemIter) 
-                {
-                    m_loopItemIter = m_loopCurrentEqvClass.listIterator(iterIdx);
-                }
+                eqvPosition.matchingEqvClass.add(arg0);
+            } 
+            else
+            {
+                eqvPosition.matchingEqvClass.add(0, arg0);
+                iterIdx += 1;
+            }
+            
+            if (replaceLoopItemIter) 
+            {
+                m_loopItemIter = m_loopCurrentEqvClass.listIterator(iterIdx);
             }
         } 
         else 
         {
             // there is no matching class, so add one
-            ArrayList newEqvClass = new ArrayList();
+            List<T> newEqvClass = new ArrayList<T>();
             newEqvClass.add(arg0);
             eqvPosition.matchingEqvClass = newEqvClass;  // cache the eqv class ref for adding to map
-            int iterIdx, addIdx;
-            iterIdx = 0;
-            addIdx = 0;
-            
-            if (m_size >= 1) 
+            int iterIdx = m_loopEqvClassIter.nextIndex();
+            int addIdx = eqvPosition.insertIdx;
+            if (addIdx < iterIdx) 
             {
-                iterIdx = m_loopEqvClassIter.nextIndex();
-                addIdx = eqvPosition.eqvClassIter.nextIndex();
-                if (addIdx < iterIdx) 
-                {
-                    iterIdx += 1;
-                }
-            } 
-            eqvPosition.eqvClassIter.add(newEqvClass);                
-            isChanged = true;
+                iterIdx += 1;
+            }
+            m_equivalenceClasses.add(addIdx, newEqvClass);
             
             // replace the class loop iterator
             m_loopEqvClassIter = m_equivalenceClasses.listIterator(iterIdx);
@@ -351,64 +388,60 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
             // advance the iterator past the just added item
             if (iterIdx == addIdx && !atEnd && !m_loopItemIter.hasNext()) 
             {
-                m_loopCurrentEqvClass = (List)m_loopEqvClassIter.next();
+                m_loopCurrentEqvClass = m_loopEqvClassIter.next();
                 m_loopItemIter = m_loopCurrentEqvClass.listIterator(1);
             }
         }
         
-        if (isChanged) 
-        {
-            m_size += 1;
-            m_changeID += 1;
-            m_itemToClassMap.put(arg0, eqvPosition.matchingEqvClass);
-        }
+        m_size += 1;
+        m_changeID += 1;
+        m_itemToClassMap.put(arg0, eqvPosition.matchingEqvClass);
         
-        return isChanged;
+        return true;
     }
 
     // represents the location of the equivalence class matching a value.
     // returned from findEqvClass, so we only have to write that code once.
     // If there is a matching class, then matchingEqvClass will be non-null.
-    // If not, then eqvClassIter holds the position that eqv class would have.
+    // If not, then insertIdx holds the position that eqv class would have.
     protected class EqvPosition 
     {
-        protected List matchingEqvClass;
-        protected ListIterator eqvClassIter;
+        protected List<T> matchingEqvClass;
+        protected int     insertIdx;
     }
 
-    // If there is a matching class, then matchingEqvClass will be non-null.
-    // If not, then eqvClassIter holds the position that eqv class would have.
-    protected EqvPosition findEqvClass(Object arg0) 
+    // Binary search over the sorted equivalence classes, comparing with the 
+    // first element of each class. Note that this doesn't look at the item to 
+    // class map, so the value doesn't need to be a member of the set.
+    protected EqvPosition findEqvClass(T arg0) 
     {
         EqvPosition eqvPosition = new EqvPosition();
-        if (m_itemToClassMap.containsKey(arg0)) 
-        {
-            eqvPosition.matchingEqvClass = (List)m_itemToClassMap.get(arg0);
-            return eqvPosition;  // note that the iterator will be null.
-        }
         
-        eqvPosition.eqvClassIter = m_equivalenceClasses.listIterator();
-        while (eqvPosition.eqvClassIter.hasNext()) 
+        int low = 0;
+        int high = m_equivalenceClasses.size() - 1;
+        while (low <= high) 
         {
-            List testEqvClass = (List)eqvPosition.eqvClassIter.next();
+            int mid = (low + high) >>> 1;
+            List<T> testEqvClass = m_equivalenceClasses.get(mid);
             assert testEqvClass.size() > 0;
             int comparison = m_comparator.compare(arg0, testEqvClass.get(0));
             if (comparison < 0) 
             {
-                // there is no matching class, to insert before this one, return the previous position
-                if (eqvPosition.eqvClassIter.hasPrevious()) 
-                {
-                    eqvPosition.eqvClassIter.previous();
-                }
-                break;
+                high = mid - 1;
+            } 
+            else if (comparison > 0) 
+            {
+                low = mid + 1;
             } 
-            else if (comparison == 0) 
+            else 
             {
                 eqvPosition.matchingEqvClass = testEqvClass;
                 return eqvPosition; 
             }
-            // and fall through to the next eqvClass
         }
+        
+        // there is no matching class, it would have to be inserted here
+        eqvPosition.insertIdx = low;
         return eqvPosition;
     }
     
@@ -429,13 +462,8 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
      */
     public boolean contains(Object arg0) 
     {
-        EqvPosition eqvPosition = findEqvClass(arg0);
-        if (eqvPosition.matchingEqvClass != null &&
-                eqvPosition.matchingEqvClass.contains(arg0)) 
-        {
-            return true; // already a member, do nothing
-        }   
-        return false;
+        // every member is in the map, even if it changed with respect to the comparator
+        return m_itemToClassMap.containsKey(arg0);
     }
 
     /* (non-Javadoc)
@@ -444,14 +472,12 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
     public boolean remove(Object arg0) 
     {
         assert m_size == m_itemToClassMap.size();
-        EqvPosition eqvPosition = findEqvClass(arg0);
-        return removeAtPosition(eqvPosition, arg0);
+        return removeFromClass(m_itemToClassMap.get(arg0), arg0);
     }
 
-    /* (non-Javadoc)
-     * @see java.util.AbstractCollection#remove(java.lang.Object)
-     */
-    private boolean removeAtPosition(EqvPosition eqvPosition, Object arg0) 
+    // removes the item from given equivalence class, which may be null if
+    // the item is not a member of the set.
+    private boolean removeFromClass(List<T> eqvClass, Object arg0) 
     {
         // when removing an object, we may have to replace the item loop iterator
         // if we removed an item from the current loop class
@@ -459,18 +485,18 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
         // replace the class loop iter 
         boolean isChanged = false;
         boolean replaceLoopItemIter = false;
-        if (eqvPosition.matchingEqvClass != null) 
+        if (eqvClass != null) 
         {
             int itemLocationIdx = 0;
             int loopNextItemIdx = 0;
             int itemClassIdx = 0;
             int loopNextClassIdx = 0;
-            itemLocationIdx = eqvPosition.matchingEqvClass.indexOf(arg0);
+            itemLocationIdx = eqvClass.indexOf(arg0);
             if (itemLocationIdx >= 0) 
             {
                 // the item is a member of this class and will be removed 
                 isChanged = true; 
-                if (eqvPosition.matchingEqvClass == m_loopCurrentEqvClass) 
+                if (eqvClass == m_loopCurrentEqvClass) 
                 {
                     // we may have to replace the item loop iterator for this class, so get the position
                     replaceLoopItemIter = true;
@@ -480,18 +506,18 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
                         loopNextItemIdx -= 1;
                     }
                 }
-                eqvPosition.matchingEqvClass.remove(arg0);
-                if (eqvPosition.matchingEqvClass.size() <= 0) 
+                eqvClass.remove(itemLocationIdx);
+                if (eqvClass.size() <= 0) 
                 {
                     // the class is now empty, remove it
                     loopNextClassIdx = m_loopEqvClassIter.nextIndex();
-                    itemClassIdx = m_equivalenceClasses.indexOf(eqvPosition.matchingEqvClass);
+                    itemClassIdx = indexOfClass(eqvClass);
                     if (itemClassIdx < loopNextClassIdx) 
                     {
                         loopNextClassIdx -= 1;
                     }
                     
-                    m_equivalenceClasses.remove(eqvPosition.matchingEqvClass);
+                    m_equivalenceClasses.remove(itemClassIdx);
                     
                     // and replace the loop iterator, and maybe the item iterator 
                     if (m_equivalenceClasses.size() == 0) 
@@ -501,10 +527,10 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
                     else 
                     {                        
                         m_loopEqvClassIter = m_equivalenceClasses.listIterator(loopNextClassIdx);
-                        if (eqvPosition.matchingEqvClass == m_loopCurrentEqvClass) 
+                        if (eqvClass == m_loopCurrentEqvClass) 
                         {
                             m_loopCurrentEqvClass = null;
-                            m_loopItemIter = m_emptyList.listIterator(); 
+                            m_loopItemIter = Collections.<T>emptyList().listIterator();
                         }                        
                     }
                 } 
@@ -528,6 +554,20 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
         return isChanged;
     }
     
+    // the classes are compared by identity, since List.equals compares contents. 
+    // The class might already be empty, so it can't be found by the comparator.
+    private int indexOfClass(List<T> eqvClass) 
+    {
+        for (int i = 0; i < m_equivalenceClasses.size(); i++) 
+        {
+            if (m_equivalenceClasses.get(i) == eqvClass) 
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
     public Comparator<T> getComparator() 
     {
         return m_comparator;
@@ -552,15 +592,17 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
     public EquivalenceClassSet<T> partition(int numberToRemove) 
     {
         EquivalenceClassSet<T> newSet = new EquivalenceClassSet<T>(m_comparator);
+        int movedEqvClasses = 0; // whole classes, removed all at once below
         while (numberToRemove > 0 && m_size > 0) 
         {
-            ArrayList firstEqvClass = (ArrayList)(m_equivalenceClasses.get(0));
+            List<T> firstEqvClass = m_equivalenceClasses.get(movedEqvClasses);
             int sizeOfFEqvClass = firstEqvClass.size();
             int numberMoved = 0;
-            List movedEqvClass;
+            List<T> movedEqvClass;
             if (numberToRemove >= sizeOfFEqvClass) 
             {
-                movedEqvClass = (List)m_equivalenceClasses.remove(0);
+                movedEqvClass = firstEqvClass;
+                movedEqvClasses += 1;
                 newSet.m_equivalenceClasses.add(movedEqvClass);
                 numberMoved = sizeOfFEqvClass;
                 
@@ -570,10 +612,10 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
                 // shuffle the equivalence class prior to a partial selection
                 if (m_shuffleEquivalenceClasses) 
                 {
-                    java.util.Collections.shuffle(firstEqvClass);
+                    Collections.shuffle(firstEqvClass);
                 }
                 
-                movedEqvClass = new ArrayList(firstEqvClass.subList(0, numberToRemove));
+                movedEqvClass = new ArrayList<T>(firstEqvClass.subList(0, numberToRemove));
                 firstEqvClass.subList(0, numberToRemove).clear();
                 newSet.m_equivalenceClasses.add(movedEqvClass);
                 numberMoved = numberToRemove;
@@ -584,14 +626,13 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
             numberToRemove -= numberMoved;
             
             // now fix up the item to class map
-            Iterator iter = movedEqvClass.iterator();
-            while (iter.hasNext()) 
+            for (T obj : movedEqvClass) 
             {
-                Object obj = iter.next();
                 m_itemToClassMap.remove(obj);                
                 newSet.m_itemToClassMap.put(obj, movedEqvClass);                
             }
         }
+        m_equivalenceClasses.subList(0, movedEqvClasses).clear();
         
         if (newSet.size() > 0) 
         {
@@ -617,12 +658,11 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
     public boolean resetEquivalenceClass(T arg0) 
     {
         boolean found = false;
-        EqvPosition eqvPosition = new EqvPosition();
-        eqvPosition.matchingEqvClass = (List)m_itemToClassMap.get(arg0);
+        List<T> eqvClass = m_itemToClassMap.get(arg0);
         
-        if (eqvPosition.matchingEqvClass != null) 
+        if (eqvClass != null) 
         {
-            removeAtPosition(eqvPosition, arg0);
+            removeFromClass(eqvClass, arg0);
             found = true;
         }
         
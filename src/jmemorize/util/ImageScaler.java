@@ -0,0 +1,110 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.util;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Creates scaled copies of images in good quality. Large reductions are done
+ * in several steps that halve the image, because a single bicubic step
+ * only looks at a few source pixels and would drop details.
+ */
+public final class ImageScaler
+{
+    private ImageScaler()
+    {
+    }
+
+    /**
+     * @return a copy of given image that is scaled to exactly the given size.
+     */
+    public static BufferedImage scale(Image image, int width, int height)
+    {
+        width = Math.max(width, 1);
+        height = Math.max(height, 1);
+
+        Image current = image;
+        int w = image.getWidth(null);
+        int h = image.getHeight(null);
+
+        do
+        {
+            // halve the size while the target is less than half as large
+            w = w / 2 >= width ? w / 2 : width;
+            h = h / 2 >= height ? h / 2 : height;
+
+            current = draw(current, w, h);
+        }
+        while (w != width || h != height);
+
+        return (BufferedImage)current;
+    }
+
+    /**
+     * @return a copy of given image that is scaled down to fit into the given
+     * bounds while keeping its aspect ratio. Smaller images are not scaled up.
+     */
+    public static BufferedImage scaleToFit(Image image, int maxWidth, int maxHeight)
+    {
+        Dimension size = getSizeToFit(image.getWidth(null), image.getHeight(null),
+            maxWidth, maxHeight);
+
+        return scale(image, size.width, size.height);
+    }
+
+    /**
+     * @return the size of a image of given size that is scaled down to fit
+     * into the given bounds while keeping its aspect ratio.
+     */
+    public static Dimension getSizeToFit(int width, int height,
+        int maxWidth, int maxHeight)
+    {
+        if (width <= maxWidth && height <= maxHeight)
+            return new Dimension(width, height);
+
+        float ratio = Math.min(maxWidth / (float)width, maxHeight / (float)height);
+
+        return new Dimension(Math.max((int)(width * ratio), 1),
+            Math.max((int)(height * ratio), 1));
+    }
+
+    private static BufferedImage draw(Image image, int width, int height)
+    {
+        BufferedImage scaled = new BufferedImage(width, height,
+            BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D g = scaled.createGraphics();
+        try
+        {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.drawImage(image, 0, 0, width, height, null);
+        }
+        finally
+        {
+            g.dispose();
+        }
+
+        return scaled;
+    }
+}